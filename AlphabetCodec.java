@@ -0,0 +1,241 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable char to index lookup for a cipher alphabet.
+ *
+ * Small alphabets (everything in Cipher) get a dense int[] table indexed by the char itself, so a lookup is a
+ * single array read. Alphabets containing chars above DENSE_LIMIT fall back to a sorted char[] with binary search.
+ * When an alphabet repeats a char, the first occurrence wins, matching ArrayList.indexOf.
+ */
+public final class AlphabetCodec {
+
+    /** Largest table we are willing to allocate for the dense lookup. */
+    static final int DENSE_LIMIT = 1 << 12;
+
+    private final char[] symbols;
+    private final int[] dense;       // char -> index, -1 when absent. Null in sparse mode.
+    private final char[] sparseKeys; // sorted chars, only in sparse mode
+    private final int[] sparseIdx;   // index of sparseKeys[i] in symbols
+
+    private AlphabetCodec(char[] symbols) {
+        this.symbols = symbols;
+        int max = 0;
+        for (char c : symbols) {
+            max = Math.max(max, c);
+        }
+        if (max < DENSE_LIMIT) {
+            dense = new int[max + 1];
+            Arrays.fill(dense, -1);
+            for (int i = 0; i < symbols.length; i++) {
+                if (dense[symbols[i]] < 0) {
+                    dense[symbols[i]] = i;
+                }
+            }
+            sparseKeys = null;
+            sparseIdx = null;
+        } else {
+            dense = null;
+            char[] keys = new char[symbols.length];
+            int[] idx = new int[symbols.length];
+            int n = 0;
+            for (int i = 0; i < symbols.length; i++) {
+                char c = symbols[i];
+                int pos = Arrays.binarySearch(keys, 0, n, c);
+                if (pos >= 0) {
+                    continue;
+                }
+                pos = -pos - 1;
+                System.arraycopy(keys, pos, keys, pos + 1, n - pos);
+                System.arraycopy(idx, pos, idx, pos + 1, n - pos);
+                keys[pos] = c;
+                idx[pos] = i;
+                n++;
+            }
+            sparseKeys = Arrays.copyOf(keys, n);
+            sparseIdx = Arrays.copyOf(idx, n);
+        }
+    }
+
+    public static AlphabetCodec of(char[] alphabet) {
+        return new AlphabetCodec(alphabet.clone());
+    }
+
+    public static AlphabetCodec of(String alphabet) {
+        return new AlphabetCodec(alphabet.toCharArray());
+    }
+
+    public static AlphabetCodec of(List<Character> alphabet) {
+        char[] chars = new char[alphabet.size()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = alphabet.get(i);
+        }
+        return new AlphabetCodec(chars);
+    }
+
+    /**
+     * Index of a char in the alphabet.
+     * @param c The char to look up.
+     * @return The index of the first occurrence, or -1 if the char is not in the alphabet.
+     */
+    public int indexOf(char c) {
+        if (dense != null) {
+            return c < dense.length ? dense[c] : -1;
+        }
+        int pos = Arrays.binarySearch(sparseKeys, c);
+        return pos >= 0 ? sparseIdx[pos] : -1;
+    }
+
+    public boolean contains(char c) {
+        return indexOf(c) >= 0;
+    }
+
+    public char charAt(int index) {
+        return symbols[index];
+    }
+
+    public int size() {
+        return symbols.length;
+    }
+
+    public char[] toCharArray() {
+        return symbols.clone();
+    }
+
+    /** Whether every symbol is 7-bit ASCII, so the alphabet can be ciphered as bytes. */
+    public boolean isAscii() {
+        return isAscii(symbols);
+    }
+
+    private static boolean isAscii(char[] chars) {
+        for (char c : chars) {
+            if (c >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compile a substitution that sends symbols[i] to image[i]. Chars outside the alphabet map to themselves.
+     * @param image The replacement for each alphabet position, same length as the alphabet.
+     * @return The compiled substitution.
+     */
+    public Mapping compile(char[] image) {
+        if (image.length != symbols.length) {
+            throw new IllegalArgumentException("Image has " + image.length + " chars, alphabet has " + symbols.length);
+        }
+        return new Mapping(this, image.clone());
+    }
+
+    /**
+     * Compile the Caesar shift by key over this alphabet.
+     * @param key The shift, may be negative.
+     * @return The compiled substitution.
+     */
+    public Mapping shift(int key) {
+        int n = symbols.length;
+        char[] image = new char[n];
+        for (int i = 0; i < n; i++) {
+            image[i] = symbols[Math.floorMod(i + key, n)];
+        }
+        return new Mapping(this, image);
+    }
+
+    /**
+     * Compile the substitution sending from[i] to to[i]. Used for the inverse of a scrambled key, where the lookup
+     * side is the permutation rather than the alphabet.
+     */
+    public static Mapping between(char[] from, char[] to) {
+        return AlphabetCodec.of(from).compile(to);
+    }
+
+    /**
+     * A compiled char to char substitution. Dense alphabets get a full char[] table covering every char up to the
+     * largest alphabet symbol, with identity entries for chars outside the alphabet. When both sides are ASCII there is
+     * also a 256-entry byte table, identity outside the alphabet, for the ByteBuffer API. A mapping is stateless, so
+     * the same instance can serve as the transform for any number of messages.
+     */
+    public static final class Mapping implements CharTransform, ByteTransform {
+        private final AlphabetCodec domain;
+        private final char[] image;
+        private final char[] table; // null in sparse mode
+        private final byte[] bytes; // null unless domain and image are ASCII
+
+        private Mapping(AlphabetCodec domain, char[] image) {
+            this.domain = domain;
+            this.image = image;
+            if (domain.dense != null) {
+                table = new char[domain.dense.length];
+                for (int c = 0; c < table.length; c++) {
+                    int idx = domain.dense[c];
+                    table[c] = idx < 0 ? (char) c : image[idx];
+                }
+            } else {
+                table = null;
+            }
+            if (domain.isAscii() && AlphabetCodec.isAscii(image)) {
+                bytes = new byte[256];
+                for (int b = 0; b < 256; b++) {
+                    bytes[b] = (byte) apply((char) b);
+                }
+            } else {
+                bytes = null;
+            }
+        }
+
+        /** Whether apply(byte[], ...) can be used. */
+        public boolean isAscii() {
+            return bytes != null;
+        }
+
+        public char apply(char c) {
+            if (table != null) {
+                return c < table.length ? table[c] : c;
+            }
+            int idx = domain.indexOf(c);
+            return idx < 0 ? c : image[idx];
+        }
+
+        /**
+         * Apply the substitution to in[from, to) and write the result to out starting at outOffset.
+         */
+        @Override
+        public int apply(char[] in, int from, int to, char[] out, int outOffset) {
+            if (table != null) {
+                char[] t = table;
+                for (int i = from; i < to; i++) {
+                    char c = in[i];
+                    out[outOffset++] = c < t.length ? t[c] : c;
+                }
+            } else {
+                for (int i = from; i < to; i++) {
+                    out[outOffset++] = apply(in[i]);
+                }
+            }
+            return to - from;
+        }
+
+        /**
+         * Apply the substitution to the bytes in[from, to), as ASCII chars; bytes from 0x80 up pass through.
+         * @throws IllegalStateException If the alphabet or its image is not ASCII.
+         */
+        @Override
+        public int apply(byte[] in, int from, int to, byte[] out, int outOffset) {
+            byte[] t = bytes;
+            if (t == null) {
+                throw new IllegalStateException("Not an ASCII mapping");
+            }
+            for (int i = from; i < to; i++) {
+                out[outOffset++] = t[in[i] & 0xFF];
+            }
+            return to - from;
+        }
+
+        public String apply(String s) {
+            char[] chars = s.toCharArray();
+            apply(chars, 0, chars.length, chars, 0);
+            return new String(chars);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+import java.util.Random;
+
+/**
+ * Messages per second for the batch API at increasing thread counts, against calling encrypt() in a loop.
+ * Run from the repo root so PolyCipher can find matrix.csv.
+ */
+public class BatchBenchmark {
+
+    static String[] messages(int count, int seed) {
+        Random r = new Random(seed);
+        String letters = "abcdefghijklmnopqrstuvwxyz";
+        String[] out = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder sb = new StringBuilder();
+            int len = 20 + r.nextInt(100);
+            for (int j = 0; j < len; j++) {
+                sb.append(r.nextInt(6) == 0 ? ' ' : letters.charAt(r.nextInt(letters.length())));
+            }
+            out[i] = sb.toString();
+        }
+        return out;
+    }
+
+    static void run(String name, Cipher cipher, String[] msgs) {
+        System.out.println(name);
+        Bench.rate("  loop encrypt()", msgs.length, 3, 5, () -> {
+            String[] out = new String[msgs.length];
+            for (int i = 0; i < msgs.length; i++) {
+                out[i] = cipher.encrypt(msgs[i]);
+            }
+            Bench.consume(out);
+        });
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            int t = threads;
+            Bench.rate("  encryptAll, " + t + " thread(s)", msgs.length, 3, 5,
+                    () -> Bench.consume(cipher.encryptAll(msgs, t, Cipher.BATCH_CHUNK_SIZE)));
+        }
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        String[] msgs = messages(count, 42);
+        run("CaesarCipher", new CaesarCipher(7), msgs);
+        run("ScrambleCipher", new ScrambleCipher(), msgs);
+        PolyCipher poly = new PolyCipher("thekeyisalongrunningsentence", new String[] {"lower", "upper", "numbers", "punctuation"});
+        poly.getBeta();
+        run("PolyCipher", poly, msgs);
+    }
+}
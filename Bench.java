@@ -0,0 +1,129 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Small timing harness shared by the *Benchmark classes. Each measurement runs a few warmup rounds so the JIT has
+ * settled, then reports the best of the measured rounds.
+ *
+ * profile() also reports what the measured rounds allocated and collected, like JMH's -prof gc: bytes per operation
+ * summed over every thread in the JVM (so work farmed out to the common pool counts), and the collections and
+ * collector time they caused.
+ */
+public final class Bench {
+
+    /** Written by benchmarks so the JIT cannot drop the work being measured. */
+    public static volatile Object sink;
+
+    private Bench() {}
+
+    /** One profile() measurement. bytesPerOp is -1 where the JVM can't count allocations. */
+    public static final class Sample {
+        public final String label;
+        public final double opsPerSec;
+        public final double bytesPerOp;
+        public final long gcCount;
+        public final long gcMillis;
+
+        Sample(String label, double opsPerSec, double bytesPerOp, long gcCount, long gcMillis) {
+            this.label = label;
+            this.opsPerSec = opsPerSec;
+            this.bytesPerOp = bytesPerOp;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+    }
+
+    /**
+     * Time body and print its throughput.
+     * @param label What is being measured.
+     * @param opsPerRound How many operations a single call of body performs.
+     * @param warmup Unmeasured rounds.
+     * @param rounds Measured rounds.
+     * @param body The work.
+     * @return The best observed operations per second.
+     */
+    public static double rate(String label, long opsPerRound, int warmup, int rounds, Runnable body) {
+        for (int i = 0; i < warmup; i++) {
+            body.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            body.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double perSec = opsPerRound * 1e9 / Math.max(1, best);
+        System.out.printf("%-48s %,16.0f ops/s%n", label, perSec);
+        return perSec;
+    }
+
+    /**
+     * Like rate(), but also counts the bytes allocated and the collections over the measured rounds.
+     */
+    public static Sample profile(String label, long opsPerRound, int warmup, int rounds, Runnable body) {
+        for (int i = 0; i < warmup; i++) {
+            body.run();
+        }
+        Map<Long, Long> allocatedBefore = allocated();
+        long[] gcBefore = collections();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            body.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        long[] gcAfter = collections();
+        Map<Long, Long> allocatedAfter = allocated();
+
+        double bytesPerOp = -1;
+        if (allocatedAfter != null) {
+            long bytes = 0;
+            for (Map.Entry<Long, Long> e : allocatedAfter.entrySet()) {
+                bytes += e.getValue() - allocatedBefore.getOrDefault(e.getKey(), 0L);
+            }
+            bytesPerOp = (double) bytes / (opsPerRound * rounds);
+        }
+        Sample s = new Sample(label, opsPerRound * 1e9 / Math.max(1, best), bytesPerOp, gcAfter[0] - gcBefore[0],
+                gcAfter[1] - gcBefore[1]);
+        System.out.printf("%-48s %,16.0f ops/s %,14.0f B/op %5d gc %6d ms%n", label, s.opsPerSec, s.bytesPerOp,
+                s.gcCount, s.gcMillis);
+        return s;
+    }
+
+    /** Bytes allocated so far by each live thread, or null if the JVM doesn't track it. */
+    private static Map<Long, Long> allocated() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            return null;
+        }
+        long[] ids = threads.getAllThreadIds();
+        long[] bytes = threads.getThreadAllocatedBytes(ids);
+        Map<Long, Long> out = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] >= 0) {
+                out.put(ids[i], bytes[i]);
+            }
+        }
+        return out;
+    }
+
+    /** Total collections and collector milliseconds so far. */
+    private static long[] collections() {
+        long count = 0;
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[] {count, millis};
+    }
+
+    public static void consume(Object o) {
+        sink = o;
+    }
+}
@@ -0,0 +1,322 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Throughput and allocation for everything in the project, in one run:
+ * - encrypt() and decrypt() of every Cipher subclass, for messages of 64 B to 16 MB over three Cipher.getAlphabet
+ *   alphabets, labelled by size: 26ch, 52ch and 71ch, through the String API and, labelled "bytes", between direct
+ *   ByteBuffers (checked against the String API first);
+ * - Dictionary.isWord and wordCount;
+ * - bigram scoring;
+ * - ColTransCipher.findKeyLength;
+ * - every crack method, on ciphertexts made from fixed seeds.
+ *
+ * Each line gives ops/s (best round), bytes allocated per op over all threads, and the collections and collector time
+ * of the measured rounds (see Bench.profile). Results can be written to a CSV and compared with an earlier one, which
+ * lists everything that got more than THRESHOLD slower or allocates that much more.
+ *
+ * PolyCipher2 is only timed encrypting, on the 71-char alphabet its convert() assumes, up to POLY2_MAX_SIZE chars:
+ * its encrypt() builds the output by string concatenation, and its decrypt() is not implemented.
+ *
+ * Run from the repo root, with a heap of 1 GB or so for the 16 MB messages.
+ *
+ * Usage: BenchmarkSuite [--filter text] [--max-size chars] [--out results.csv] [--baseline earlier.csv]
+ */
+public class BenchmarkSuite {
+
+    static final int[] SIZES = {64, 1 << 10, 1 << 14, 1 << 18, 1 << 22, 1 << 24};
+    static final String[][] ALPHABETS = {
+        {"lower"},
+        {"lower", "upper"},
+        {"lower", "upper", "numbers", "punctuation"},
+    };
+
+    /** Chars a round of a cipher benchmark handles at least, so short messages are timed over many calls. */
+    static final int ROUND_CHARS = 1 << 20;
+
+    /** Sizes from here up get fewer rounds. */
+    static final int LARGE_SIZE = 1 << 22;
+
+    static final int POLY2_MAX_SIZE = 1 << 14;
+
+    /** Change against the baseline that gets reported. */
+    static final double THRESHOLD = 0.10;
+
+    static final long SEED = 4380;
+
+    private final String filter;
+    private final List<Bench.Sample> samples = new ArrayList<>();
+
+    BenchmarkSuite(String filter) {
+        this.filter = filter;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String filter = "";
+        int maxSize = SIZES[SIZES.length - 1];
+        String out = null;
+        String baseline = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--filter" -> filter = args[i + 1];
+                case "--max-size" -> maxSize = Integer.parseInt(args[i + 1]);
+                case "--out" -> out = args[i + 1];
+                case "--baseline" -> baseline = args[i + 1];
+                default -> throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+
+        BenchmarkSuite suite = new BenchmarkSuite(filter);
+        suite.ciphers(maxSize);
+        suite.dictionary();
+        suite.scoring();
+        suite.keyLength();
+        suite.cracks();
+
+        if (out != null) {
+            suite.write(out);
+        }
+        if (baseline != null) {
+            suite.compare(baseline);
+        }
+    }
+
+    boolean wants(String label) {
+        return label.contains(filter);
+    }
+
+    /** Profile body unless its label is filtered out. */
+    void run(String label, long opsPerRound, int warmup, int rounds, Runnable body) {
+        if (wants(label)) {
+            samples.add(Bench.profile(label, opsPerRound, warmup, rounds, body));
+        }
+    }
+
+    void ciphers(int maxSize) {
+        for (String[] names : ALPHABETS) {
+            ArrayList<Character> alpha = Cipher.getAlphabet(names);
+            KeyFactory keys = new KeyFactory(SEED);
+            String alphaName = alpha.size() + "ch"; // 26ch, 52ch, 71ch
+
+            ScrambleCipher scramble = new ScrambleCipher(names, keys.permutation(alpha));
+            ColTransCipher colTrans = new ColTransCipher(keys.columnKey(12), names, true, false);
+            colTrans.setRandom(Rand.seeded(SEED));
+            PolyCipher poly = new PolyCipher("benchmarkkey", names);
+            poly.setSquare(keys.square(alpha));
+            PolyCipher2 poly2 = null;
+            if (alpha.size() == PolyCipher.DEFAULT_ALPHABET.size()) {
+                poly2 = new PolyCipher2("benchmarkkey", names);
+                poly2.generateSquare();
+            }
+            Map<String, Cipher> ciphers = new LinkedHashMap<>();
+            ciphers.put("CaesarCipher", new CaesarCipher(7, names));
+            ciphers.put("ScrambleCipher", scramble);
+            ciphers.put("ColTransCipher", colTrans);
+            ciphers.put("PolyCipher", poly);
+
+            for (int size : SIZES) {
+                if (size > maxSize) {
+                    break;
+                }
+                String message = KeyFactory.runningKey(size, alpha, Rand.seeded(SEED + size));
+                int reps = Math.max(1, ROUND_CHARS / size);
+                int warmup = size >= LARGE_SIZE ? 1 : 3;
+                int rounds = size >= LARGE_SIZE ? 3 : 5;
+                for (Map.Entry<String, Cipher> e : ciphers.entrySet()) {
+                    Cipher cipher = e.getValue();
+                    String label = e.getKey() + " " + alphaName + " " + size;
+                    if (!wants("encrypt " + label) && !wants("decrypt " + label)
+                            && !wants("encrypt " + label + " bytes") && !wants("decrypt " + label + " bytes")) {
+                        continue;
+                    }
+                    if (cipher instanceof ColTransCipher c) {
+                        c.setRandom(Rand.seeded(SEED));
+                    }
+                    String ciphertext = cipher.encrypt(message);
+                    run("encrypt " + label, reps, warmup, rounds, () -> {
+                        for (int i = 0; i < reps; i++) {
+                            Bench.consume(cipher.encrypt(message));
+                        }
+                    });
+                    run("decrypt " + label, reps, warmup, rounds, () -> {
+                        for (int i = 0; i < reps; i++) {
+                            Bench.consume(cipher.decrypt(ciphertext));
+                        }
+                    });
+                    bytes(cipher, label, message, ciphertext, reps, warmup, rounds);
+                }
+                if (poly2 != null && size <= POLY2_MAX_SIZE) {
+                    PolyCipher2 p2 = poly2;
+                    int n = Math.max(1, reps / 64);
+                    run("encrypt PolyCipher2 " + alphaName + " " + size, n, warmup, rounds, () -> {
+                        for (int i = 0; i < n; i++) {
+                            Bench.consume(p2.encrypt(message));
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    /** encrypt() and decrypt() between direct ByteBuffers, after checking them against the String results. */
+    void bytes(Cipher cipher, String label, String message, String ciphertext, int reps, int warmup, int rounds) {
+        if (!wants("encrypt " + label + " bytes") && !wants("decrypt " + label + " bytes")) {
+            return;
+        }
+        ByteBuffer plain = direct(message);
+        ByteBuffer cipherBytes = direct(ciphertext);
+        ByteBuffer out = ByteBuffer.allocateDirect(cipher.outputSize(Math.max(message.length(), ciphertext.length())));
+        if (cipher instanceof ColTransCipher c) {
+            c.setRandom(Rand.seeded(SEED));
+        }
+        cipher.encrypt(plain.duplicate(), out);
+        if (!StandardCharsets.US_ASCII.decode(out.flip()).toString().equals(ciphertext)) {
+            throw new IllegalStateException(label + ": byte encrypt differs from encrypt(String)");
+        }
+        out.clear();
+        cipher.decrypt(cipherBytes.duplicate(), out);
+        if (!StandardCharsets.US_ASCII.decode(out.flip()).toString().equals(cipher.decrypt(ciphertext))) {
+            throw new IllegalStateException(label + ": byte decrypt differs from decrypt(String)");
+        }
+        run("encrypt " + label + " bytes", reps, warmup, rounds, () -> {
+            for (int i = 0; i < reps; i++) {
+                out.clear();
+                Bench.consume(cipher.encrypt(plain.duplicate(), out));
+            }
+        });
+        run("decrypt " + label + " bytes", reps, warmup, rounds, () -> {
+            for (int i = 0; i < reps; i++) {
+                out.clear();
+                Bench.consume(cipher.decrypt(cipherBytes.duplicate(), out));
+            }
+        });
+    }
+
+    static ByteBuffer direct(String ascii) {
+        byte[] b = ascii.getBytes(StandardCharsets.US_ASCII);
+        return ByteBuffer.allocateDirect(b.length).put(b).flip();
+    }
+
+    void dictionary() {
+        if (!wants("Dictionary.isWord") && !wants("Dictionary.wordCount")) {
+            return;
+        }
+        String[] words = NgramBenchmark.TEXT.split(" ");
+        List<String> probes = new ArrayList<>();
+        for (String w : words) {
+            probes.add(w);
+            probes.add(new StringBuilder(w).reverse().toString());
+        }
+        Dictionary.isWord("warmup");
+        run("Dictionary.isWord", probes.size(), 3, 5, () -> {
+            int found = 0;
+            for (String w : probes) {
+                if (Dictionary.isWord(w)) {
+                    found++;
+                }
+            }
+            Bench.consume(found);
+        });
+        run("Dictionary.wordCount", 1, 3, 5, () -> Bench.consume(Dictionary.wordCount(NgramBenchmark.TEXT)));
+    }
+
+    void scoring() {
+        String text = repeat(NgramBenchmark.TEXT, 1 << 16);
+        BigramScorer bigrams = new BigramScorer();
+        run("BigramScorer.score 65536", 1, 3, 5, () -> Bench.consume(bigrams.score(text)));
+    }
+
+    void keyLength() {
+        String plain = repeat(ColumnSolverBenchmark.TEXT, 1200);
+        String ciphertext = new ColTransCipher(new KeyFactory(SEED).columnKey(12), null, true, false).encrypt(plain);
+        run("ColTransCipher.findKeyLength", 1, 3, 5, () -> Bench.consume(ColTransCipher.findKeyLength(ciphertext)));
+    }
+
+    void cracks() {
+        KeyFactory keys = new KeyFactory(SEED);
+        String plain = NgramBenchmark.TEXT;
+
+        String caesarText = new CaesarCipher(11).encrypt(plain);
+        crack("CaesarCipher.crack", () -> new CaesarCipher(0).crack(caesarText, new BigramScorer()));
+
+        ScrambleCipher scramble = new ScrambleCipher(new String[] {"lower"},
+                keys.permutation(Cipher.getAlphabet(new String[] {"lower"})));
+        String scrambleText = scramble.encrypt(plain);
+        PlaintextScorer polish = WeightedScorer.builder().add(NgramScorer.quadgrams(), 1)
+                .add(new BigramScorer(), 1).build();
+        crack("ScrambleCipher.crack", () -> scramble.crack(scrambleText, new HashMap<>(),
+                new SubstitutionSolver(Bigrams.model, polish, 40, SEED)));
+
+        String letters = new String(NgramBenchmark.letters(plain));
+        ColTransCipher colTrans = new ColTransCipher(keys.columnKey(9), null, true, false);
+        colTrans.setRandom(Rand.seeded(SEED));
+        String colTransText = colTrans.encrypt(letters);
+        crack("ColTransCipher.crack", () -> ColTransCipher.crack(colTransText, new NgramScorer(),
+                ColumnAnnealer.builder().seed(SEED).build()));
+
+        String[] names = {"lower", "upper", "numbers", "punctuation"};
+        PolyCipher poly = new PolyCipher(keys.runningKey(11, Cipher.getAlphabet(names)), names);
+        poly.setSquare(keys.square(Cipher.getAlphabet(names)));
+        String polyText = poly.encrypt(PolyCipher.clean(repeat(plain, 1500)));
+        crack("PolyCipher.crack", () -> new PolyCracker(PolyCipher.DEFAULT_ALPHABET, Bigrams.model, 16, SEED)
+                .crack(polyText));
+    }
+
+    private void crack(String label, Supplier<Object> body) {
+        run(label, 1, 1, 3, () -> Bench.consume(body.get()));
+    }
+
+    static String repeat(String text, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length) {
+            sb.append(text).append(' ');
+        }
+        return sb.substring(0, length);
+    }
+
+    void write(String path) throws IOException {
+        try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(Paths.get(path)))) {
+            w.println("benchmark,ops_per_sec,bytes_per_op,gc_count,gc_ms");
+            for (Bench.Sample s : samples) {
+                w.printf("%s,%.1f,%.1f,%d,%d%n", s.label, s.opsPerSec, s.bytesPerOp, s.gcCount, s.gcMillis);
+            }
+        }
+    }
+
+    /** Print every benchmark that is more than THRESHOLD slower, or allocates that much more, than in the baseline. */
+    void compare(String path) throws IOException {
+        Map<String, double[]> before = new HashMap<>();
+        List<String> lines = Files.readAllLines(Paths.get(path));
+        for (String line : lines.subList(Math.min(1, lines.size()), lines.size())) {
+            String[] f = line.split(",");
+            before.put(f[0], new double[] {Double.parseDouble(f[1]), Double.parseDouble(f[2])});
+        }
+        int regressions = 0;
+        System.out.println();
+        System.out.println("Against " + path + ":");
+        for (Bench.Sample s : samples) {
+            double[] b = before.get(s.label);
+            if (b == null) {
+                continue;
+            }
+            boolean slower = s.opsPerSec < b[0] * (1 - THRESHOLD);
+            boolean heavier = s.bytesPerOp > b[1] * (1 + THRESHOLD) && s.bytesPerOp - b[1] >= 64;
+            if (slower || heavier) {
+                regressions++;
+                System.out.printf("%-48s %,14.0f -> %,14.0f ops/s %,12.0f -> %,12.0f B/op%n", s.label, b[0],
+                        s.opsPerSec, b[1], s.bytesPerOp);
+            }
+        }
+        System.out.println(regressions == 0 ? "No regressions." : regressions + " regression(s).");
+    }
+}
@@ -0,0 +1,403 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Binary store for many PolyCipher beta matrices, opened through a read-only memory map.
+ *
+ * Layout (big endian):
+ *   header     magic "BKS1", version u16, reserved u16, count u32, directory CRC32 u32
+ *   directory  count entries of: id i32, size i32, name offset i32, name length i32, data offset i64, data CRC32 u32
+ *   names      UTF-8 bytes
+ *   squares    per square of size n: alphabet n u16, forward n*n u16 (row major, square[row][plainIndex]),
+ *              inverse n*n i16 (row major, inverse[row][alphabet index of cipher char] = plaintext index or -1)
+ *
+ * Squares are read in place, nothing is copied onto the heap when a PolyCipher binds to one. The directory is
+ * checked when the file is opened, a square's data the first time it is looked up.
+ */
+public final class BetaKeystore {
+
+    static final int MAGIC = 0x424B5331; // "BKS1"
+    static final short VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int ENTRY_BYTES = 28;
+
+    private final ByteBuffer data;
+    private final Map<Integer, Entry> byId = new LinkedHashMap<>();
+    private final Map<String, Entry> byName = new LinkedHashMap<>();
+
+    private BetaKeystore(ByteBuffer data) throws IOException {
+        this.data = data;
+        if (data.limit() < HEADER_BYTES || data.getInt(0) != MAGIC) {
+            throw new IOException("Not a beta keystore");
+        }
+        if (data.getShort(4) != VERSION) {
+            throw new IOException("Unsupported keystore version " + data.getShort(4));
+        }
+        int count = data.getInt(8);
+        long dirBytes = (long) count * ENTRY_BYTES;
+        if (count < 0 || HEADER_BYTES + dirBytes > data.limit()) {
+            throw new IOException("Corrupt keystore directory");
+        }
+        if (crc(data, HEADER_BYTES, (int) dirBytes) != data.getInt(12)) {
+            throw new IOException("Keystore directory checksum mismatch");
+        }
+        for (int i = 0; i < count; i++) {
+            int at = HEADER_BYTES + i * ENTRY_BYTES;
+            int id = data.getInt(at);
+            int size = data.getInt(at + 4);
+            int nameOffset = data.getInt(at + 8);
+            int nameLength = data.getInt(at + 12);
+            long offset = data.getLong(at + 16);
+            if (size <= 0 || size > Short.MAX_VALUE || nameOffset < 0 || nameLength < 0
+                    || (long) nameOffset + nameLength > data.limit() || offset < 0
+                    || offset + dataBytes(size) > data.limit()) {
+                throw new IOException("Corrupt keystore entry " + id);
+            }
+            byte[] name = new byte[nameLength];
+            data.get(nameOffset, name);
+            Entry e = new Entry(id, new String(name, StandardCharsets.UTF_8), size, (int) offset, data.getInt(at + 24));
+            byId.put(id, e);
+            byName.put(e.name, e);
+        }
+    }
+
+    /**
+     * Map a keystore file into memory.
+     * @param path The keystore file.
+     * @return The opened keystore.
+     * @throws IOException If the file can't be read, fails its directory checksum or a directory entry points outside
+     *     the file.
+     */
+    public static BetaKeystore open(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            return new BetaKeystore(map);
+        }
+    }
+
+    public List<Integer> ids() {
+        return Collections.unmodifiableList(new ArrayList<>(byId.keySet()));
+    }
+
+    public String name(int id) {
+        return entry(id).name;
+    }
+
+    /**
+     * The square stored under id, backed directly by the mapped file.
+     */
+    public BetaSquare square(int id) {
+        return entry(id).square();
+    }
+
+    public BetaSquare square(String name) {
+        Entry e = byName.get(name);
+        if (e == null) {
+            throw new IllegalArgumentException("No square named " + name);
+        }
+        return e.square();
+    }
+
+    private Entry entry(int id) {
+        Entry e = byId.get(id);
+        if (e == null) {
+            throw new IllegalArgumentException("No square with id " + id);
+        }
+        return e;
+    }
+
+    private static long dataBytes(int n) {
+        return 2L * n + 4L * n * n;
+    }
+
+    private static int crc(ByteBuffer buf, int offset, int length) {
+        CRC32 crc = new CRC32();
+        ByteBuffer slice = buf.duplicate();
+        slice.position(offset).limit(offset + length);
+        crc.update(slice);
+        return (int) crc.getValue();
+    }
+
+    private final class Entry {
+        final int id;
+        final String name;
+        final int size;
+        final int offset;
+        final int checksum;
+        private volatile MappedSquare square;
+
+        Entry(int id, String name, int size, int offset, int checksum) {
+            this.id = id;
+            this.name = name;
+            this.size = size;
+            this.offset = offset;
+            this.checksum = checksum;
+        }
+
+        MappedSquare square() {
+            MappedSquare s = square;
+            if (s == null) {
+                if (crc(data, offset, (int) dataBytes(size)) != checksum) {
+                    throw new IllegalStateException("Checksum mismatch for square " + id);
+                }
+                s = new MappedSquare(data, offset, size);
+                square = s;
+            }
+            return s;
+        }
+    }
+
+    /**
+     * A square read straight out of the mapped file with absolute gets, which are safe across threads.
+     */
+    private static final class MappedSquare implements BetaSquare {
+        private final ByteBuffer data;
+        private final int n;
+        private final int forward;
+        private final int inverse;
+        private final AlphabetCodec alphabet;
+
+        MappedSquare(ByteBuffer data, int offset, int n) {
+            this.data = data;
+            this.n = n;
+            char[] symbols = new char[n];
+            for (int i = 0; i < n; i++) {
+                symbols[i] = data.getChar(offset + 2 * i);
+            }
+            this.alphabet = AlphabetCodec.of(symbols);
+            this.forward = offset + 2 * n;
+            this.inverse = forward + 2 * n * n;
+        }
+
+        @Override
+        public int size() {
+            return n;
+        }
+
+        @Override
+        public AlphabetCodec alphabet() {
+            return alphabet;
+        }
+
+        @Override
+        public char cipher(int row, int plainIndex) {
+            checkRow(row);
+            if (plainIndex < 0 || plainIndex >= n) {
+                throw new ArrayIndexOutOfBoundsException(plainIndex);
+            }
+            return data.getChar(forward + 2 * (row * n + plainIndex));
+        }
+
+        @Override
+        public int plain(int row, char cipherChar) {
+            checkRow(row);
+            int idx = alphabet.indexOf(cipherChar);
+            if (idx < 0) {
+                return -1;
+            }
+            return data.getShort(inverse + 2 * (row * n + idx));
+        }
+
+        // Without this a bad row would silently read a neighbouring row
+        private void checkRow(int row) {
+            if (row < 0 || row >= n) {
+                throw new ArrayIndexOutOfBoundsException(row);
+            }
+        }
+    }
+
+    /**
+     * Collects squares and writes them out in keystore format.
+     */
+    public static final class Builder {
+        private final List<Pending> squares = new ArrayList<>();
+
+        private static final class Pending {
+            final int id;
+            final String name;
+            final char[] alphabet;
+            final char[][] square;
+
+            Pending(int id, String name, char[] alphabet, char[][] square) {
+                this.id = id;
+                this.name = name;
+                this.alphabet = alphabet;
+                this.square = square;
+            }
+        }
+
+        /**
+         * @param id Unique id the square is bound by.
+         * @param name Unique human readable name.
+         * @param alphabet Alphabet the square's columns are indexed by.
+         * @param square The beta matrix, alphabet.length rows of alphabet.length chars.
+         */
+        public Builder add(int id, String name, char[] alphabet, char[][] square) {
+            int n = alphabet.length;
+            if (n > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Alphabet too large for a keystore square");
+            }
+            if (square.length != n) {
+                throw new IllegalArgumentException("Square has " + square.length + " rows, alphabet has " + n);
+            }
+            for (char[] row : square) {
+                if (row.length != n) {
+                    throw new IllegalArgumentException("Square rows must have " + n + " chars");
+                }
+            }
+            for (Pending s : squares) {
+                if (s.id == id || s.name.equals(name)) {
+                    throw new IllegalArgumentException("Duplicate square " + id + " / " + name);
+                }
+            }
+            squares.add(new Pending(id, name, alphabet.clone(), square));
+            return this;
+        }
+
+        public void write(Path path) throws IOException {
+            int count = squares.size();
+            List<byte[]> names = new ArrayList<>();
+            int nameBytes = 0;
+            long dataBytes = 0;
+            for (Pending s : squares) {
+                byte[] name = s.name.getBytes(StandardCharsets.UTF_8);
+                names.add(name);
+                nameBytes += name.length;
+                dataBytes += dataBytes(s.alphabet.length);
+            }
+            long total = HEADER_BYTES + (long) count * ENTRY_BYTES + nameBytes + dataBytes;
+            if (total > Integer.MAX_VALUE) {
+                throw new IOException("Keystore would exceed 2 GB");
+            }
+            ByteBuffer buf = ByteBuffer.allocate((int) total);
+            int nameAt = HEADER_BYTES + count * ENTRY_BYTES;
+            int dataAt = nameAt + nameBytes;
+            for (int i = 0; i < count; i++) {
+                Pending s = squares.get(i);
+                char[] alphabet = s.alphabet;
+                char[][] square = s.square;
+                int n = alphabet.length;
+                int start = dataAt;
+                buf.position(dataAt);
+                for (char c : alphabet) {
+                    buf.putChar(c);
+                }
+                for (char[] row : square) {
+                    for (char c : row) {
+                        buf.putChar(c);
+                    }
+                }
+                AlphabetCodec codec = AlphabetCodec.of(alphabet);
+                short[] inv = new short[n];
+                for (char[] row : square) {
+                    Arrays.fill(inv, (short) -1);
+                    for (int col = n - 1; col >= 0; col--) {
+                        int idx = codec.indexOf(row[col]);
+                        if (idx >= 0) {
+                            inv[idx] = (short) col;
+                        }
+                    }
+                    for (short v : inv) {
+                        buf.putShort(v);
+                    }
+                }
+                dataAt = buf.position();
+
+                byte[] name = names.get(i);
+                buf.position(nameAt);
+                buf.put(name);
+
+                int entry = HEADER_BYTES + i * ENTRY_BYTES;
+                buf.putInt(entry, s.id);
+                buf.putInt(entry + 4, n);
+                buf.putInt(entry + 8, nameAt);
+                buf.putInt(entry + 12, name.length);
+                buf.putLong(entry + 16, start);
+                buf.putInt(entry + 24, crc(buf, start, dataAt - start));
+                nameAt += name.length;
+            }
+            buf.putInt(0, MAGIC);
+            buf.putShort(4, VERSION);
+            buf.putShort(6, (short) 0);
+            buf.putInt(8, count);
+            buf.putInt(12, crc(buf, HEADER_BYTES, count * ENTRY_BYTES));
+            buf.clear();
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buf.hasRemaining()) {
+                    ch.write(buf);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read a beta matrix in the matrix.csv format, one row per line.
+     */
+    public static char[][] importCsv(Path path) throws IOException {
+        List<char[]> rows = new ArrayList<>();
+        try (BufferedReader br = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                rows.add(line.toCharArray());
+            }
+        }
+        return rows.toArray(new char[0][]);
+    }
+
+    /**
+     * Write a square in the matrix.csv format, one row per line.
+     */
+    public static void exportCsv(BetaSquare square, Path path) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+            for (int row = 0; row < square.size(); row++) {
+                writer.println(square.row(row));
+            }
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////
+    /// Main                                                          //
+    ////////////////////////////////////////////////////////////////////
+
+    /**
+     * import <keystore> <csv> [<csv> ...]   Build a keystore from CSV squares, ids numbered from 0.
+     * export <keystore> <id> <csv>          Write one square back out as CSV.
+     * list <keystore>                       Print the ids, names and sizes.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 3 && args[0].equals("import")) {
+            Builder b = new Builder();
+            char[] alphabet = PolyCipher.DEFAULT_ALPHABET.toCharArray();
+            for (int i = 2; i < args.length; i++) {
+                b.add(i - 2, Paths.get(args[i]).getFileName().toString(), alphabet, importCsv(Paths.get(args[i])));
+            }
+            b.write(Paths.get(args[1]));
+        } else if (args.length == 4 && args[0].equals("export")) {
+            exportCsv(open(Paths.get(args[1])).square(Integer.parseInt(args[2])), Paths.get(args[3]));
+        } else if (args.length == 2 && args[0].equals("list")) {
+            BetaKeystore ks = open(Paths.get(args[1]));
+            for (int id : ks.ids()) {
+                System.out.printf("%d\t%s\t%d%n", id, ks.name(id), ks.square(id).size());
+            }
+        } else {
+            System.out.println("Usage: BetaKeystore import <keystore> <csv>... | export <keystore> <id> <csv> | list <keystore>");
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * A compiled PolyCipher beta matrix. Row r sends the plaintext symbol at alphabet index p to cipher(r, p), and
+ * plain(r, c) undoes it. Implementations are read-only and safe to share between threads.
+ */
+public interface BetaSquare {
+
+    /** Number of rows, which is also the number of columns and the alphabet size. */
+    int size();
+
+    /** The alphabet plaintext indices and key chars are resolved against. */
+    AlphabetCodec alphabet();
+
+    char cipher(int row, int plainIndex);
+
+    /**
+     * @return The plaintext index that row encrypts to cipherChar, or -1 if the row never produces it.
+     */
+    int plain(int row, char cipherChar);
+
+    /**
+     * Copy one row out, for printing and CSV export.
+     */
+    default char[] row(int row) {
+        char[] out = new char[size()];
+        for (int col = 0; col < out.length; col++) {
+            out[col] = cipher(row, col);
+        }
+        return out;
+    }
+}
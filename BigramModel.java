@@ -0,0 +1,200 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * English letter pair statistics in flat arrays, indexed by code(a) * A + code(b) with A = 26.
+ *
+ * Holds the raw frequencies from bigrams.txt and their natural logs as floats. Pairs the file doesn't list, or lists
+ * with a frequency of zero, get the floor instead of negative infinity so one odd pair can't sink a whole candidate.
+ * Scoring walks the text once and does one array read per pair, no Strings and no boxing.
+ */
+public final class BigramModel {
+
+    public static final int A = 26;
+
+    /** Log probability given to pairs never seen in the training text. */
+    public static final float DEFAULT_FLOOR = (float) Math.log(1e-7);
+
+    private final float[] frequency;
+    private final float[] logProb;
+    private final float floor;
+
+    BigramModel(float[] frequency, float floor) {
+        if (frequency.length != A * A) {
+            throw new IllegalArgumentException("Expected " + A * A + " pairs, got " + frequency.length);
+        }
+        this.frequency = frequency;
+        this.floor = floor;
+        logProb = new float[A * A];
+        for (int i = 0; i < logProb.length; i++) {
+            logProb[i] = frequency[i] > 0 ? (float) Math.log(frequency[i]) : floor;
+        }
+    }
+
+    /**
+     * Read a table in the bigrams.txt format, one "xy frequency" pair per line. Lines that don't parse are skipped.
+     * @param path The file to read.
+     * @return The model, with DEFAULT_FLOOR for anything missing.
+     */
+    public static BigramModel read(String path) throws IOException {
+        return read(path, DEFAULT_FLOOR);
+    }
+
+    public static BigramModel read(String path, float floor) throws IOException {
+        float[] frequency = new float[A * A];
+        try (BufferedReader br = new BufferedReader(new FileReader(path))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.strip();
+                if (line.length() < 4 || !Character.isWhitespace(line.charAt(2))) {
+                    continue;
+                }
+                int a = code(line.charAt(0));
+                int b = code(line.charAt(1));
+                if (a < 0 || b < 0) {
+                    continue;
+                }
+                try {
+                    frequency[a * A + b] = Float.parseFloat(line.substring(3).strip());
+                } catch (NumberFormatException nfEx) {
+                    // Not a pair line, leave it at zero
+                }
+            }
+        }
+        return new BigramModel(frequency, floor);
+    }
+
+    /**
+     * Code of a letter, case ignored.
+     * @return 0 to 25, or -1 for anything that isn't a-z or A-Z.
+     */
+    public static int code(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a';
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        }
+        return -1;
+    }
+
+    /**
+     * Write the code of each char in text[from, to) to out starting at 0, so a search can score the same letters many
+     * times without decoding them again.
+     * @return The number of codes written, always to - from.
+     */
+    public static int encode(CharSequence text, int from, int to, int[] out) {
+        for (int i = from; i < to; i++) {
+            out[i - from] = code(text.charAt(i));
+        }
+        return to - from;
+    }
+
+    public static int encode(char[] text, int from, int to, int[] out) {
+        for (int i = from; i < to; i++) {
+            out[i - from] = code(text[i]);
+        }
+        return to - from;
+    }
+
+    public float frequency(int a, int b) {
+        return frequency[a * A + b];
+    }
+
+    public float logProb(int a, int b) {
+        return logProb[a * A + b];
+    }
+
+    public float floor() {
+        return floor;
+    }
+
+    /**
+     * Sum of log probabilities of adjacent pairs in text[from, to). Pairs with a non-letter on either side are
+     * skipped.
+     */
+    public double score(char[] text, int from, int to) {
+        float[] lp = logProb;
+        double total = 0.0;
+        int prev = -1;
+        for (int i = from; i < to; i++) {
+            int cur = code(text[i]);
+            if (prev >= 0 && cur >= 0) {
+                total += lp[prev * A + cur];
+            }
+            prev = cur;
+        }
+        return total;
+    }
+
+    public double score(CharSequence text, int from, int to) {
+        float[] lp = logProb;
+        double total = 0.0;
+        int prev = -1;
+        for (int i = from; i < to; i++) {
+            int cur = code(text.charAt(i));
+            if (prev >= 0 && cur >= 0) {
+                total += lp[prev * A + cur];
+            }
+            prev = cur;
+        }
+        return total;
+    }
+
+    /**
+     * Same as score(char[], ...) over codes from encode(). Negative codes break the chain like non-letters do.
+     */
+    public double score(int[] codes, int from, int to) {
+        float[] lp = logProb;
+        double total = 0.0;
+        int prev = -1;
+        for (int i = from; i < to; i++) {
+            int cur = codes[i];
+            if (prev >= 0 && cur >= 0) {
+                total += lp[prev * A + cur];
+            }
+            prev = cur;
+        }
+        return total;
+    }
+
+    /**
+     * Relative frequency of each pair in text[from, to), written into out (length A * A). Same pairs score() looks at.
+     * @return The number of pairs counted.
+     */
+    public static int histogram(CharSequence text, int from, int to, float[] out) {
+        Arrays.fill(out, 0f);
+        int pairs = 0;
+        int prev = -1;
+        for (int i = from; i < to; i++) {
+            int cur = code(text.charAt(i));
+            if (prev >= 0 && cur >= 0) {
+                out[prev * A + cur]++;
+                pairs++;
+            }
+            prev = cur;
+        }
+        if (pairs > 0) {
+            for (int i = 0; i < out.length; i++) {
+                out[i] /= pairs;
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Sum of absolute differences between observed relative frequencies (from histogram()) and this model, over the
+     * pairs that occur in the observation.
+     */
+    public float distance(float[] observed) {
+        float total = 0f;
+        for (int i = 0; i < observed.length; i++) {
+            if (observed[i] > 0) {
+                total += Math.abs(observed[i] - frequency[i]);
+            }
+        }
+        return total;
+    }
+}
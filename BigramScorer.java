@@ -0,0 +1,34 @@
+/**
+ * Sum of log probabilities of adjacent letter pairs, from Bigrams. Case is ignored, and pairs with anything but a-z
+ * on either side are skipped. Pairs bigrams.txt never saw score the model's floor.
+ */
+public class BigramScorer implements PlaintextScorer {
+
+    private final BigramModel model;
+    private final CipherMetrics.Counter metrics;
+
+    public BigramScorer() {
+        this(Bigrams.model);
+    }
+
+    public BigramScorer(BigramModel model) {
+        this.model = model;
+        this.metrics = CipherMetrics.scorer("bigram");
+    }
+
+    @Override
+    public double score(char[] text, int from, int to) {
+        CipherMetrics.ScoreEvent event = CipherMetrics.beginScore();
+        double score = model.score(text, from, to);
+        CipherMetrics.scored(event, metrics, to - from);
+        return score;
+    }
+
+    @Override
+    public double score(CharSequence text, int from, int to) {
+        CipherMetrics.ScoreEvent event = CipherMetrics.beginScore();
+        double score = model.score(text, from, to);
+        CipherMetrics.scored(event, metrics, to - from);
+        return score;
+    }
+}
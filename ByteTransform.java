@@ -0,0 +1,12 @@
+/**
+ * CharTransform over ASCII bytes, for the ByteBuffer API in Cipher. Chars are the bytes' values; bytes outside the
+ * alphabet are treated as the String API treats chars outside it. A fresh instance is needed per message.
+ */
+public interface ByteTransform {
+
+    /**
+     * Transform in[from, to) into out starting at outOffset. A transform never writes more bytes than it reads.
+     * @return The number of bytes written.
+     */
+    int apply(byte[] in, int from, int to, byte[] out, int outOffset);
+}
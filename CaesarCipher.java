@@ -1,9 +1,16 @@
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.regex.Pattern;
 
 public class CaesarCipher extends Cipher {
 
+    /** How many of the likeliest shifts crack() decrypts and hands to its scorer. */
+    public static final int CONFIRMED = 3;
+
     private int key;
+    private AlphabetCodec.Mapping forward;
+    private AlphabetCodec.Mapping inverse;
 
     public CaesarCipher(int k) {
         key = k;
@@ -30,68 +37,165 @@ public class CaesarCipher extends Cipher {
 
     public void setKey(int k) {
         key = k;
+        forward = null;
+        inverse = null;
     }
 
-    public String encrypt(String plaintext) {
-        char[] chars = plaintext.toCharArray();
-        StringBuilder ciphertext = new StringBuilder();
-        for (char c : chars) {
-            if (!validate(c)) {
-                ciphertext.append(c);
-                continue;
-            }
-            int cIdx = alphabet.indexOf(c);
-            int kIdx = cIdx + key;
-            while (kIdx >= alphabet.size()) {
-                kIdx -= alphabet.size();
-            }
-            ciphertext.append(alphabet.get(kIdx));
+    private AlphabetCodec.Mapping forward() {
+        AlphabetCodec.Mapping m = forward;
+        if (m == null) {
+            m = codec().shift(key);
+            forward = m;
         }
-        return ciphertext.toString();
+        return m;
     }
 
-    public String decrypt(String ciphertext) {
-        char[] chars = ciphertext.toCharArray();
-        StringBuilder plaintext = new StringBuilder();
-        for (char c : chars) {
-            if (!validate(c)) {
-                plaintext.append(c);
-                continue;
-            }
-            int cIdx = alphabet.indexOf(c);
-            int kIdx = cIdx - key;
-            while (kIdx < 0) {
-                kIdx += alphabet.size();
-            }
-            plaintext.append(alphabet.get(kIdx));
+    private AlphabetCodec.Mapping inverse() {
+        AlphabetCodec.Mapping m = inverse;
+        if (m == null) {
+            m = codec().shift(-key);
+            inverse = m;
         }
-        return plaintext.toString();
+        return m;
+    }
+
+    public String encrypt(String plaintext) {
+        CipherMetrics.CipherEvent event = CipherMetrics.begin();
+        String out = forward().apply(plaintext);
+        CipherMetrics.end(event, this, true, plaintext.length());
+        return out;
+    }
+
+    public String decrypt(String ciphertext) {
+        CipherMetrics.CipherEvent event = CipherMetrics.begin();
+        String out = inverse().apply(ciphertext);
+        CipherMetrics.end(event, this, false, ciphertext.length());
+        return out;
+    }
+
+    @Override
+    protected CharTransform encryptor() {
+        return forward();
+    }
+
+    @Override
+    protected CharTransform decryptor() {
+        return inverse();
+    }
+
+    @Override
+    protected ByteTransform byteEncryptor() {
+        AlphabetCodec.Mapping m = forward();
+        return m.isAscii() ? m : null;
+    }
+
+    @Override
+    protected ByteTransform byteDecryptor() {
+        AlphabetCodec.Mapping m = inverse();
+        return m.isAscii() ? m : null;
     }
 
     public void enumerate(String ciphertext) {
         for (int i = 0; i < alphabet.size(); i++) {
-            key = i;
+            setKey(i);
             String plaintext = decrypt(ciphertext);
             System.out.printf("%d:\t%s%n", key, plaintext);
         }
     }
 
-    public void crack(String ciphertext) {
-        Dictionary d = new Dictionary();
-        String bestPlaintext = "";
-        int bestWordCount = 0;
-        int bestKey = 0;
-        for (int i = 0; i < alphabet.size(); i++) {
-            key = i;
-            String plaintext = decrypt(ciphertext);
-            int validWordCount = Dictionary.wordCount(plaintext);
-            if (validWordCount > bestWordCount) {
-                bestPlaintext = plaintext;
-                bestWordCount = validWordCount;
-                bestKey = key;
+    /**
+     * The likeliest shift, picked by dictionary words among the CONFIRMED most likely by letter frequency.
+     * @return The shift, the plaintext and its score; shift 0 and the ciphertext itself if nothing was ranked.
+     */
+    public CrackResult<Integer> crack(String ciphertext) {
+        List<CrackResult<Integer>> ranked = crack(ciphertext, new DictionaryScorer());
+        return ranked.isEmpty() ? new CrackResult<>(0, ciphertext, 0.0) : ranked.get(0);
+    }
+
+    /**
+     * Rank the shifts by letter frequency and let the scorer pick among the CONFIRMED most likely.
+     * @param ciphertext The ciphertext to crack.
+     * @param scorer Fitness for the candidate plaintexts.
+     * @return Up to CONFIRMED candidates, best first, scored by the scorer.
+     */
+    public List<CrackResult<Integer>> crack(String ciphertext, PlaintextScorer scorer) {
+        return crack(ciphertext, CONFIRMED, scorer);
+    }
+
+    /**
+     * crack() as a Cracker: the best of the CONFIRMED most likely shifts. Every shift is ranked in one pass, so there
+     * is nothing to cut short; each candidate is offered in turn.
+     * @param scorer Fitness for the candidate plaintexts.
+     */
+    public Cracker<Integer> cracker(PlaintextScorer scorer) {
+        return (ciphertext, context) -> {
+            List<CrackResult<Integer>> ranked = crack(ciphertext, CONFIRMED, scorer);
+            context.iterations(codec().size());
+            context.candidates(codec().size());
+            for (CrackResult<Integer> r : ranked) {
+                context.offer(r);
+            }
+            return context.finish("CaesarCipher",
+                    ranked.isEmpty() ? new CrackResult<>(0, ciphertext, 0.0) : ranked.get(0));
+        };
+    }
+
+    /**
+     * Rank every shift without decrypting: the ciphertext is counted into a histogram over the alphabet once, and
+     * shift k scores the mean English frequency (LetterFrequency, case ignored) of the chars the histogram turns into
+     * when rotated back by k. Only the top shifts are then decrypted. Leaves this cipher's key alone.
+     * @param ciphertext The ciphertext to crack.
+     * @param top How many shifts to decrypt and return.
+     * @param scorer Re-scores and re-ranks the decrypted candidates, e.g. a DictionaryScorer. May be null to keep the
+     *               frequency scores.
+     * @return Up to top candidates, best first.
+     */
+    public List<CrackResult<Integer>> crack(String ciphertext, int top, PlaintextScorer scorer) {
+        AlphabetCodec codec = codec();
+        int n = codec.size();
+        int[] counts = new int[n];
+        int total = 0;
+        for (int i = 0; i < ciphertext.length(); i++) {
+            int idx = codec.indexOf(ciphertext.charAt(i));
+            if (idx >= 0) {
+                counts[idx]++;
+                total++;
             }
         }
-        System.out.printf("%d:\t%s %d%n", bestKey, bestPlaintext, bestWordCount);
+        double[] expected = new double[n];
+        for (int i = 0; i < n; i++) {
+            expected[i] = LetterFrequency.frequencies.getOrDefault(Character.toLowerCase(codec.charAt(i)), 0.0);
+        }
+
+        // Cross-correlation of the histogram with the expected frequencies, one rotation per shift
+        double[] score = new double[n];
+        Integer[] shifts = new Integer[n];
+        for (int k = 0; k < n; k++) {
+            double sum = 0;
+            for (int c = 0; c < n; c++) {
+                if (counts[c] > 0) {
+                    sum += counts[c] * expected[Math.floorMod(c - k, n)];
+                }
+            }
+            score[k] = total == 0 ? 0 : sum / total;
+            shifts[k] = k;
+        }
+        Arrays.sort(shifts, (x, y) -> Double.compare(score[y], score[x]));
+
+        char[] chars = ciphertext.toCharArray();
+        List<CrackResult<Integer>> ranked = new ArrayList<>();
+        for (int i = 0; i < Math.min(top, n); i++) {
+            int k = shifts[i];
+            char[] plain = new char[chars.length];
+            codec.shift(-k).apply(chars, 0, chars.length, plain, 0);
+            double s = scorer == null ? score[k] : scorer.score(plain, 0, plain.length);
+            ranked.add(new CrackResult<>(k, new String(plain), s));
+        }
+        if (scorer != null) {
+            // Stable, so ties keep their frequency order
+            ranked.sort((x, y) -> Double.compare(y.score(), x.score()));
+        }
+        return ranked;
     }
 
     public static void main(String[] args) {
@@ -107,5 +211,13 @@ public class CaesarCipher extends Cipher {
         //String decrypt = cipher.decrypt(ciphertext);
         //System.out.println(decrypt);
         cipher.enumerate(ciphertext);
+
+        CaesarCipher lower = new CaesarCipher(17);
+        String encrypted = lower.encrypt("the quick brown fox jumps over the lazy dog and keeps on running");
+        for (CrackResult<Integer> candidate : lower.crack(encrypted, 5, null)) {
+            System.out.printf("%d:\t%s%n", candidate.key(), candidate);
+        }
+        CrackResult<Integer> best = lower.crack(encrypted);
+        System.out.printf("%d:\t%s %s%n", best.key(), best.plaintext(), best.score());
     }
 }
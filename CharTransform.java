@@ -0,0 +1,12 @@
+/**
+ * One direction of a cipher, applied to a message a chunk at a time. Implementations carry whatever state has to
+ * survive a chunk boundary (the PolyCipher key position, for example), so a fresh instance is needed per message.
+ */
+public interface CharTransform {
+
+    /**
+     * Transform in[from, to) into out starting at outOffset. A transform never writes more chars than it reads.
+     * @return The number of chars written.
+     */
+    int apply(char[] in, int from, int to, char[] out, int outOffset);
+}
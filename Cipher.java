@@ -1,5 +1,21 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public abstract class Cipher {
     public static char[] lowercaseAlpha = {'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l', 'm', 'n', 'o', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z'};
@@ -8,23 +24,60 @@ public abstract class Cipher {
     public static char[] symbols = {'@', '#', '$', '%', '^', '&', '*', '(', ')', '{', '}', '[', ']', '-', '_', '=', '+', '<', '>', '|', '\\', '`', '~'};
     public static char[] punctuation = {'.', ',', '!', '?', '\'', '\"', ';', ':', '/'};
     public static char[] whitespace = {' ', '\t', '\n'};
+
+    /** Number of chars the streaming API reads and ciphers at a time. */
+    static final int CHUNK_SIZE = 8192;
+
+    /** Messages a batch worker handles before it stops splitting. */
+    static final int BATCH_CHUNK_SIZE = 256;
+
+    /** Per-thread scratch buffers for the batch API; anything longer than this is not kept around. */
+    private static final int MAX_CACHED_BUFFER = 1 << 16;
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[256]);
+
+    /**
+     * Batch pools by parallelism, shared by every cipher and kept for the life of the JVM, so their workers and the
+     * workers' scratch buffers survive from one batch to the next. Idle workers still time out as in any ForkJoinPool.
+     */
+    private static final Map<Integer, ForkJoinPool> BATCH_POOLS = new ConcurrentHashMap<>();
+
+    /** Per-thread chunk for ciphering buffers without an accessible array, e.g. direct ones. */
+    private static final ThreadLocal<byte[]> BYTE_CHUNK = ThreadLocal.withInitial(() -> new byte[CHUNK_SIZE]);
+
     protected ArrayList<Character> alphabet;
+    private CompiledAlphabet compiled;
 
     public Cipher() {}
 
-    void swap(char[] alpha) {
-        int a = (int)(Math.random() * alpha.length);
-        int b = (int)(Math.random() * alpha.length);
-        char c = alpha[a];
-        alpha[a] = alpha[b];
-        alpha[b] = c;
+    /**
+     * The lookup tables for the current alphabet. Built on first use and rebuilt only if a subclass swaps the
+     * alphabet list out.
+     */
+    protected AlphabetCodec codec() {
+        CompiledAlphabet c = compiled;
+        if (c == null || c.source != alphabet) {
+            c = new CompiledAlphabet(alphabet);
+            compiled = c;
+        }
+        return c.codec;
     }
 
+    private static final class CompiledAlphabet {
+        final ArrayList<Character> source;
+        final AlphabetCodec codec;
+
+        CompiledAlphabet(ArrayList<Character> source) {
+            this.source = source;
+            this.codec = AlphabetCodec.of(source);
+        }
+    }
+
+    /** Shuffle alpha in place, every order equally likely. */
     void scramble(char[] alpha) {
-        for(int i = 0; i < alpha.length; i++) {
-            for (int j = 0; j < alpha.length; j++) {
-                swap(alpha);
-            }
+        int[] p = KeyFactory.permutation(alpha.length, Rand.local());
+        char[] old = alpha.clone();
+        for (int i = 0; i < alpha.length; i++) {
+            alpha[i] = old[p[i]];
         }
     }
 
@@ -68,9 +121,18 @@ public abstract class Cipher {
         return a;
     }
 
+    static char[] toCharArray(List<Character> chars) {
+        char[] out = new char[chars.size()];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = chars.get(i);
+        }
+        return out;
+    }
+
     boolean validate(String s) {
-        for (char c : s.toCharArray()) {
-            if (!alphabet.contains(c)) {
+        AlphabetCodec a = codec();
+        for (int i = 0; i < s.length(); i++) {
+            if (!a.contains(s.charAt(i))) {
                 return false;
             }
         }
@@ -78,10 +140,316 @@ public abstract class Cipher {
     }
 
     boolean validate(char c) {
-        return alphabet.contains(c);
+        return codec().contains(c);
     }
 
     public abstract String encrypt(String plaintext);
     public abstract String decrypt(String ciphertext);
+
+    /**
+     * A fresh encrypting transform for one message, or null if this cipher needs the whole message at once.
+     */
+    protected CharTransform encryptor() {
+        return null;
+    }
+
+    /**
+     * A fresh decrypting transform for one message, or null if this cipher needs the whole message at once.
+     */
+    protected CharTransform decryptor() {
+        return null;
+    }
+
+    /**
+     * A fresh encrypting transform over ASCII bytes for one message, or null if this cipher has none (it needs the
+     * whole message, or its alphabet isn't ASCII); the ByteBuffer API then goes through encrypt(String).
+     */
+    protected ByteTransform byteEncryptor() {
+        return null;
+    }
+
+    /**
+     * A fresh decrypting transform over ASCII bytes for one message, or null if this cipher has none.
+     */
+    protected ByteTransform byteDecryptor() {
+        return null;
+    }
+
+    /**
+     * Most bytes encrypt() or decrypt() can write for a message of length bytes. Only ciphers that pad write more
+     * than they read.
+     */
+    public int outputSize(int length) {
+        return length;
+    }
+
+    /**
+     * Encrypt the bytes remaining in in, as one message of ASCII chars, into out. Output is the ASCII encoding of
+     * encrypt(String) on the same chars. Heap and direct buffers both work, and ciphers with a byte transform never
+     * make a String. in is read to its limit and out's position moves past what was written.
+     * @return The number of bytes written.
+     * @throws BufferOverflowException If out has less room than outputSize(in.remaining()); neither buffer is
+     * touched.
+     */
+    public int encrypt(ByteBuffer in, ByteBuffer out) {
+        return bytes(in, out, byteEncryptor(), true);
+    }
+
+    public int decrypt(ByteBuffer in, ByteBuffer out) {
+        return bytes(in, out, byteDecryptor(), false);
+    }
+
+    public byte[] encrypt(byte[] plaintext) {
+        return bytes(plaintext, true);
+    }
+
+    public byte[] decrypt(byte[] ciphertext) {
+        return bytes(ciphertext, false);
+    }
+
+    private byte[] bytes(byte[] in, boolean encrypt) {
+        byte[] out = new byte[outputSize(in.length)];
+        ByteBuffer src = ByteBuffer.wrap(in);
+        ByteBuffer dst = ByteBuffer.wrap(out);
+        int n = encrypt ? encrypt(src, dst) : decrypt(src, dst);
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    private int bytes(ByteBuffer in, ByteBuffer out, ByteTransform transform, boolean encrypt) {
+        int len = in.remaining();
+        if (out.remaining() < outputSize(len)) {
+            throw new BufferOverflowException();
+        }
+        if (transform == null) {
+            // No byte path: one String each way, Latin-1 so every byte is one char
+            String text = StandardCharsets.ISO_8859_1.decode(in).toString();
+            text = encrypt ? encrypt(text) : decrypt(text);
+            if (!StandardCharsets.ISO_8859_1.newEncoder().canEncode(text)) {
+                throw new IllegalStateException("Output is not single-byte text");
+            }
+            out.put(text.getBytes(StandardCharsets.ISO_8859_1));
+            return text.length();
+        }
+        CipherMetrics.CipherEvent event = CipherMetrics.begin();
+        int n = transform(transform, in, out);
+        CipherMetrics.end(event, this, encrypt, len);
+        return n;
+    }
+
+    /**
+     * Run transform over the bytes remaining in in, writing to out: in place on the arrays of heap buffers, through
+     * a per-thread chunk otherwise. out must have room for in.remaining() bytes.
+     * @return The number of bytes written.
+     */
+    static int transform(ByteTransform transform, ByteBuffer in, ByteBuffer out) {
+        int n;
+        if (in.hasArray() && out.hasArray()) {
+            n = transform.apply(in.array(), in.arrayOffset() + in.position(), in.arrayOffset() + in.limit(),
+                    out.array(), out.arrayOffset() + out.position());
+            in.position(in.limit());
+            out.position(out.position() + n);
+        } else {
+            byte[] chunk = BYTE_CHUNK.get();
+            n = 0;
+            while (in.hasRemaining()) {
+                int k = Math.min(chunk.length, in.remaining());
+                in.get(chunk, 0, k);
+                int m = transform.apply(chunk, 0, k, chunk, 0);
+                out.put(chunk, 0, m);
+                n += m;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Encrypt everything readable from in and write it to out. Output is identical to encrypt(String) on the
+     * whole input. Neither stream is closed.
+     */
+    public void encrypt(Reader in, Writer out) throws IOException {
+        stream(in, out, encryptor(), true);
+    }
+
+    /**
+     * Decrypt everything readable from in and write it to out. Output is identical to decrypt(String) on the
+     * whole input. Neither stream is closed.
+     */
+    public void decrypt(Reader in, Writer out) throws IOException {
+        stream(in, out, decryptor(), false);
+    }
+
+    public void encrypt(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        encrypt(in, out, StandardCharsets.UTF_8);
+    }
+
+    public void decrypt(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        decrypt(in, out, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encrypt a byte channel whose content is text in the given charset. Neither channel is closed.
+     */
+    public void encrypt(ReadableByteChannel in, WritableByteChannel out, Charset charset) throws IOException {
+        Writer w = Channels.newWriter(out, charset.newEncoder(), CHUNK_SIZE);
+        encrypt(Channels.newReader(in, charset.newDecoder(), CHUNK_SIZE), w);
+        w.flush();
+    }
+
+    public void decrypt(ReadableByteChannel in, WritableByteChannel out, Charset charset) throws IOException {
+        Writer w = Channels.newWriter(out, charset.newEncoder(), CHUNK_SIZE);
+        decrypt(Channels.newReader(in, charset.newDecoder(), CHUNK_SIZE), w);
+        w.flush();
+    }
+
+    public String[] encryptAll(String[] messages) {
+        return encryptAll(messages, ForkJoinPool.getCommonPoolParallelism(), BATCH_CHUNK_SIZE);
+    }
+
+    public String[] decryptAll(String[] messages) {
+        return decryptAll(messages, ForkJoinPool.getCommonPoolParallelism(), BATCH_CHUNK_SIZE);
+    }
+
+    public List<String> encryptAll(List<String> messages) {
+        return Arrays.asList(encryptAll(messages.toArray(new String[0])));
+    }
+
+    public List<String> decryptAll(List<String> messages) {
+        return Arrays.asList(decryptAll(messages.toArray(new String[0])));
+    }
+
+    /**
+     * Encrypt many messages at once, split across a ForkJoin pool.
+     * @param messages The plaintexts.
+     * @param parallelism Number of worker threads, 1 runs everything on the calling thread. Each parallelism gets one
+     *                    pool, reused by every later batch that asks for it.
+     * @param chunkSize Number of messages a worker handles without splitting further.
+     * @return The ciphertexts, in the same order as the input.
+     */
+    public String[] encryptAll(String[] messages, int parallelism, int chunkSize) {
+        return batch(messages, parallelism, chunkSize, true);
+    }
+
+    public String[] decryptAll(String[] messages, int parallelism, int chunkSize) {
+        return batch(messages, parallelism, chunkSize, false);
+    }
+
+    /** encryptAll() on a pool of the caller's, e.g. one shared with other work. */
+    public String[] encryptAll(String[] messages, ForkJoinPool pool, int chunkSize) {
+        return batch(messages, pool, chunkSize, true);
+    }
+
+    public String[] decryptAll(String[] messages, ForkJoinPool pool, int chunkSize) {
+        return batch(messages, pool, chunkSize, false);
+    }
+
+    private String[] batch(String[] messages, int parallelism, int chunkSize, boolean encrypt) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        ForkJoinPool pool = parallelism == 1 ? null
+                : parallelism == ForkJoinPool.getCommonPoolParallelism() ? ForkJoinPool.commonPool()
+                : BATCH_POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
+        return batch(messages, pool, chunkSize, encrypt);
+    }
+
+    /** pool is null to run everything on the calling thread. */
+    private String[] batch(String[] messages, ForkJoinPool pool, int chunkSize, boolean encrypt) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        String[] results = new String[messages.length];
+        if (pool == null || messages.length <= chunkSize) {
+            cipherChunk(messages, results, 0, messages.length, encrypt);
+        } else {
+            pool.invoke(new BatchTask(messages, results, 0, messages.length, chunkSize, encrypt));
+        }
+        return results;
+    }
+
+    /**
+     * Cipher in[from, to) into out, recording the chunk as one metrics event. Ciphers without a transform go through
+     * the String API, which records each message itself.
+     */
+    private void cipherChunk(String[] in, String[] out, int from, int to, boolean encrypt) {
+        CharTransform transform = encrypt ? encryptor() : decryptor();
+        if (transform == null) {
+            for (int i = from; i < to; i++) {
+                out[i] = encrypt ? encrypt(in[i]) : decrypt(in[i]);
+            }
+            return;
+        }
+        CipherMetrics.CipherEvent event = CipherMetrics.begin();
+        long chars = 0;
+        for (int i = from; i < to; i++) {
+            out[i] = cipherOne(in[i], transform);
+            chars += in[i].length();
+        }
+        CipherMetrics.end(event, this, encrypt, (int) Math.min(chars, Integer.MAX_VALUE));
+    }
+
+    /** Cipher one message using the calling thread's scratch buffer. */
+    private static String cipherOne(String message, CharTransform transform) {
+        int len = message.length();
+        char[] buf = BUFFER.get();
+        if (buf.length < len) {
+            buf = new char[Math.max(len, buf.length * 2)];
+            if (buf.length <= MAX_CACHED_BUFFER) {
+                BUFFER.set(buf);
+            }
+        }
+        message.getChars(0, len, buf, 0);
+        int n = transform.apply(buf, 0, len, buf, 0);
+        return new String(buf, 0, n);
+    }
+
+    private final class BatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] in;
+        private final String[] out;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+        private final boolean encrypt;
+
+        BatchTask(String[] in, String[] out, int from, int to, int chunkSize, boolean encrypt) {
+            this.in = in;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+            this.encrypt = encrypt;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                cipherChunk(in, out, from, to, encrypt);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new BatchTask(in, out, from, mid, chunkSize, encrypt),
+                    new BatchTask(in, out, mid, to, chunkSize, encrypt));
+        }
+    }
+
+    private void stream(Reader in, Writer out, CharTransform transform, boolean encrypt) throws IOException {
+        char[] buf = new char[CHUNK_SIZE];
+        int n;
+        if (transform == null) {
+            // Whole-message cipher, nothing to do but buffer it up
+            StringBuilder sb = new StringBuilder();
+            while ((n = in.read(buf)) != -1) {
+                sb.append(buf, 0, n);
+            }
+            out.write(encrypt ? encrypt(sb.toString()) : decrypt(sb.toString()));
+            return;
+        }
+        char[] result = new char[CHUNK_SIZE];
+        while ((n = in.read(buf)) != -1) {
+            int m = transform.apply(buf, 0, n, result, 0);
+            out.write(result, 0, m);
+        }
+    }
     //public abstract void crack(String ciphertext);
 }
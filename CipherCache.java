@@ -0,0 +1,332 @@
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A bounded cache of ready-to-use ciphers, keyed by cipher type, key and alphabet names, so a service that gets the
+ * same few keys over and over doesn't pay for getAlphabet(), ColTransCipher.setKey() or reading matrix.csv on every
+ * request.
+ *
+ * A cipher is built once per key even when many threads ask for it at once: the first one builds it and the rest wait
+ * for it. Builders run outside the map, so a slow build only holds up callers of the same key. A failed build is not
+ * cached.
+ *
+ * Entries untouched for longer than the idle timeout are dropped. When the cache grows past its maximum size the least
+ * recently used entries are dropped, in batches: one thread at a time sweeps the cache down to 7/8 of the maximum.
+ * So the cache can briefly hold a few more entries than the maximum, for as long as the sweep takes.
+ *
+ * The cached ciphers are shared. Callers may encrypt and decrypt with them from any thread, but must not change them
+ * (setKey(), scrambleSquare(), setRandom() and the like).
+ */
+public final class CipherCache {
+
+    /** Which cipher to build: a type the builder knows ("caesar", "scramble", "poly", "coltrans"), key and alphabet. */
+    public static final class Key {
+        private final String type;
+        private final String key;
+        private final List<String> alphabet;
+        private final int hash;
+
+        public Key(String type, String key, String... alphabet) {
+            this.type = type;
+            this.key = key;
+            this.alphabet = List.of(alphabet);
+            this.hash = (type.hashCode() * 31 + key.hashCode()) * 31 + this.alphabet.hashCode();
+        }
+
+        public String type() {
+            return type;
+        }
+
+        public String key() {
+            return key;
+        }
+
+        public String[] alphabet() {
+            return alphabet.toArray(new String[0]);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key k && hash == k.hash && type.equals(k.type) && key.equals(k.key)
+                    && alphabet.equals(k.alphabet);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return type + "(" + key + ", " + alphabet + ")";
+        }
+    }
+
+    /** A point-in-time copy of the counters. */
+    public static final class Stats {
+        public final long hits;
+        public final long misses;
+        public final long loads;
+        public final long loadFailures;
+        public final long evictions;
+        public final long loadNanos;
+
+        Stats(long hits, long misses, long loads, long loadFailures, long evictions, long loadNanos) {
+            this.hits = hits;
+            this.misses = misses;
+            this.loads = loads;
+            this.loadFailures = loadFailures;
+            this.evictions = evictions;
+            this.loadNanos = loadNanos;
+        }
+
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 1.0 : (double) hits / requests;
+        }
+
+        /** Mean time to build a cipher, in nanoseconds. */
+        public double averageLoadNanos() {
+            return loads == 0 ? 0.0 : (double) loadNanos / loads;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits %,d, misses %,d (%.1f%% hit), loads %,d (%.1f us each), failures %,d, "
+                    + "evictions %,d", hits, misses, 100 * hitRate(), loads, averageLoadNanos() / 1e3, loadFailures,
+                    evictions);
+        }
+    }
+
+    private static final class Entry {
+        final FutureTask<Cipher> value;
+        volatile long lastAccess;
+
+        Entry(FutureTask<Cipher> value, long now) {
+            this.value = value;
+            this.lastAccess = now;
+        }
+    }
+
+    /**
+     * How stale an entry's access time may get before a hit updates it. Keeps threads hitting the same hot entry from
+     * all writing its cache line; recency is only this coarse.
+     */
+    static final long TOUCH_NANOS = 1_000_000;
+
+    private final int maxSize;
+    private final long idleNanos; // Long.MAX_VALUE for never
+    private final Function<Key, Cipher> builder;
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final ReentrantLock sweeping = new ReentrantLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    /** Build ciphers with compile(), keep up to maxSize, and drop nothing for being idle. */
+    public CipherCache(int maxSize) {
+        this(maxSize, null, CipherCache::compile);
+    }
+
+    /**
+     * @param maxSize Most entries to keep.
+     * @param idle How long an entry may go unused before it is dropped, or null for no limit.
+     * @param builder Builds the cipher for a key; it must not use this cache.
+     */
+    public CipherCache(int maxSize, Duration idle, Function<Key, Cipher> builder) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+        this.idleNanos = idle == null ? Long.MAX_VALUE : idle.toNanos();
+        this.builder = builder;
+    }
+
+    public Cipher get(String type, String key, String... alphabet) {
+        return get(new Key(type, key, alphabet));
+    }
+
+    /**
+     * The cipher for key, built on first use.
+     * @throws IllegalArgumentException If the builder rejects the key; the failure is not cached.
+     */
+    public Cipher get(Key key) {
+        long now = System.nanoTime();
+        Entry e = entries.get(key);
+        if (e != null && now - e.lastAccess > idleNanos) {
+            if (entries.remove(key, e)) {
+                evictions.increment();
+            }
+            e = null;
+        }
+        if (e != null) {
+            hits.increment();
+            if (now - e.lastAccess > TOUCH_NANOS) {
+                e.lastAccess = now;
+            }
+            return await(key, e);
+        }
+
+        misses.increment();
+        FutureTask<Cipher> task = new FutureTask<>(() -> load(key));
+        Entry mine = new Entry(task, now);
+        e = entries.putIfAbsent(key, mine);
+        if (e == null) {
+            e = mine;
+            task.run();
+            if (entries.size() > maxSize) {
+                sweep();
+            }
+        }
+        return await(key, e);
+    }
+
+    private Cipher load(Key key) {
+        long start = System.nanoTime();
+        Cipher c = builder.apply(key);
+        loadNanos.add(System.nanoTime() - start);
+        loads.increment();
+        return c;
+    }
+
+    private Cipher await(Key key, Entry e) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return e.value.get();
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException | CancellationException ex) {
+            if (entries.remove(key, e)) {
+                loadFailures.increment();
+            }
+            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+            if (cause instanceof RuntimeException r) {
+                throw r;
+            }
+            if (cause instanceof Error err) {
+                throw err;
+            }
+            throw new IllegalStateException("Could not build " + key, cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Drop idle entries and, if over the maximum size, the least recently used down to 7/8 of it. */
+    public void cleanUp() {
+        sweeping.lock();
+        try {
+            evict();
+        } finally {
+            sweeping.unlock();
+        }
+    }
+
+    private void sweep() {
+        // One sweeper at a time is enough; the others carry on
+        if (sweeping.tryLock()) {
+            try {
+                evict();
+            } finally {
+                sweeping.unlock();
+            }
+        }
+    }
+
+    private void evict() {
+        long now = System.nanoTime();
+        List<Map.Entry<Key, Entry>> live = new ArrayList<>(entries.size());
+        for (Map.Entry<Key, Entry> m : entries.entrySet()) {
+            if (now - m.getValue().lastAccess > idleNanos) {
+                remove(m);
+            } else {
+                live.add(m);
+            }
+        }
+        if (live.size() <= maxSize) {
+            return;
+        }
+        int target = maxSize - maxSize / 8;
+        // Snapshot the access times; they keep changing under the sort
+        long[] seen = new long[live.size()];
+        Integer[] order = new Integer[live.size()];
+        for (int i = 0; i < seen.length; i++) {
+            seen[i] = live.get(i).getValue().lastAccess;
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(seen[a], seen[b]));
+        for (int i = 0; i < live.size() - target; i++) {
+            remove(live.get(order[i]));
+        }
+    }
+
+    private void remove(Map.Entry<Key, Entry> m) {
+        if (entries.remove(m.getKey(), m.getValue())) {
+            evictions.increment();
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void invalidate(Key key) {
+        entries.remove(key);
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), loads.sum(), loadFailures.sum(), evictions.sum(),
+                loadNanos.sum());
+    }
+
+    /**
+     * The default builder. caesar takes the shift as its key, scramble the permuted alphabet, poly and coltrans their
+     * key text; poly reads its square from matrix.csv. The cipher's lookup tables are built here as well, so the
+     * first request that uses it doesn't pay for them.
+     */
+    public static Cipher compile(Key key) {
+        String[] names = key.alphabet();
+        Cipher c = switch (key.type()) {
+            case "caesar" -> new CaesarCipher(Integer.parseInt(key.key()), names);
+            case "scramble" -> new ScrambleCipher(names, key.key().toCharArray());
+            case "coltrans" -> new ColTransCipher(key.key(), names, true, false);
+            case "poly" -> {
+                PolyCipher poly = new PolyCipher(key.key(), names);
+                poly.getBeta();
+                yield poly;
+            }
+            default -> throw new IllegalArgumentException("Unknown cipher type " + key.type());
+        };
+        // Build the lookup tables through the transforms rather than encrypt() and decrypt(), which would add made-up
+        // calls to CipherMetrics
+        c.codec();
+        c.encryptor();
+        c.decryptor();
+        c.byteEncryptor();
+        c.byteDecryptor();
+        return c;
+    }
+}
@@ -0,0 +1,144 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Requests per second for "get the cipher for this key and encrypt a short message", with keys drawn from a Zipf
+ * distribution over KEYS PolyCipher and ColTransCipher keys, as a service sees them: a few keys carry most of the
+ * traffic and the rest trail off. Building a cipher per request is compared with CipherCache at a few sizes, at
+ * increasing thread counts; each line gives the hit rate the cache reached. Run from the repo root so PolyCipher can
+ * find matrix.csv.
+ *
+ * Usage: CipherCacheBenchmark [Zipf exponent, default 1.0]
+ */
+public class CipherCacheBenchmark {
+
+    static final int KEYS = 20_000;
+    static final int REQUESTS = 1 << 16;
+    static final int[] CACHE_SIZES = {100, 1_000, 10_000};
+    static final String[] NAMES = {"lower", "upper", "numbers", "punctuation"};
+    static final String MESSAGE = "MeetmeattheoldmillatmidnightBringthekeys";
+
+    public static void main(String[] args) throws Exception {
+        double exponent = args.length > 0 ? Double.parseDouble(args[0]) : 1.0;
+        CipherCache.Key[] keys = new CipherCache.Key[KEYS];
+        KeyFactory factory = new KeyFactory(25);
+        ArrayList<Character> alpha = Cipher.getAlphabet(NAMES);
+        for (int i = 0; i < KEYS; i++) {
+            String key = factory.runningKey(8 + i % 24, alpha);
+            keys[i] = new CipherCache.Key(i % 2 == 0 ? "poly" : "coltrans", key, NAMES);
+        }
+
+        checkSingleBuild(keys[0]);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        List<Integer> threadCounts = new ArrayList<>();
+        for (int t = 1; t <= cores; t *= 2) {
+            threadCounts.add(t);
+        }
+        System.out.printf("%,d keys, Zipf s = %.2f, %,d requests per thread%n", KEYS, exponent, REQUESTS);
+        for (int threads : threadCounts) {
+            int[][] draws = new int[threads][];
+            for (int t = 0; t < threads; t++) {
+                draws[t] = zipf(REQUESTS, KEYS, exponent, Rand.seeded(100 + t));
+            }
+            run("no cache", threads, draws, keys, null);
+            for (int size : CACHE_SIZES) {
+                run("CipherCache " + size, threads, draws, keys, new CipherCache(size));
+            }
+        }
+    }
+
+    private static void run(String label, int threads, int[][] draws, CipherCache.Key[] keys, CipherCache cache)
+            throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            // First pass warms the JIT and the cache; the second is timed
+            double best = 0;
+            for (int round = 0; round < 2; round++) {
+                long start = System.nanoTime();
+                List<Future<?>> done = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    int[] mine = draws[t];
+                    done.add(pool.submit(() -> {
+                        for (int k : mine) {
+                            Cipher c = cache == null ? CipherCache.compile(keys[k]) : cache.get(keys[k]);
+                            Bench.consume(c.encrypt(MESSAGE));
+                        }
+                    }));
+                }
+                for (Future<?> f : done) {
+                    f.get();
+                }
+                best = (double) threads * REQUESTS / ((System.nanoTime() - start) / 1e9);
+            }
+            String hit = cache == null ? "" : String.format("%5.1f%% hit", 100 * cache.stats().hitRate());
+            System.out.printf("%-20s %2d thread(s) %,14.0f req/s %s%n", label, threads, best, hit);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Many threads asking for one cold key at once must build it once, and all get the same cipher. */
+    static void checkSingleBuild(CipherCache.Key key) throws Exception {
+        LongAdder builds = new LongAdder();
+        CipherCache cache = new CipherCache(16, null, k -> {
+            builds.increment();
+            return CipherCache.compile(k);
+        });
+        int threads = 8;
+        CountDownLatch go = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Cipher>> got = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                got.add(pool.submit(() -> {
+                    go.await();
+                    return cache.get(key);
+                }));
+            }
+            go.countDown();
+            for (Future<Cipher> f : got) {
+                if (f.get() != got.get(0).get()) {
+                    throw new IllegalStateException("Threads got different ciphers for " + key);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        if (builds.sum() != 1) {
+            throw new IllegalStateException(key + " was built " + builds.sum() + " times");
+        }
+        System.out.println("Hot key built once: " + cache.stats());
+    }
+
+    /** count draws from ranks 0..n-1, rank r with weight 1 / (r + 1)^s. */
+    static int[] zipf(int count, int n, double s, Rand rand) {
+        double[] cdf = new double[n];
+        double total = 0;
+        for (int r = 0; r < n; r++) {
+            total += 1 / Math.pow(r + 1, s);
+            cdf[r] = total;
+        }
+        int[] out = new int[count];
+        for (int i = 0; i < count; i++) {
+            double u = rand.nextDouble() * total;
+            int lo = 0;
+            int hi = n - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cdf[mid] < u) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            out[i] = lo;
+        }
+        return out;
+    }
+}
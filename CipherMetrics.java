@@ -0,0 +1,480 @@
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Flight Recorder events and JMX counters for the ciphers, the dictionary, the scorers and the crackers.
+ *
+ * Counters are always on and cost a LongAdder increment or two per call: calls and chars per cipher operation and
+ * per scorer, dictionary hits and misses, and per cracker the searches, iterations, candidates and time. Timing
+ * encrypt() and decrypt() for JMX is off unless Timing is set, since two clock reads can double the cost of a short
+ * message. Counters are published as cipher:type=CipherMetrics by register(), or at startup with
+ * -Dcipher.metrics.jmx=true.
+ *
+ * The events are recorded only while a recording enables them, and cost next to nothing otherwise:
+ * - cipher.CipherOperation: an encrypt() or decrypt() call taking over 1 ms by default;
+ * - cipher.Score: one scorer call, off by default as crackers make thousands a second;
+ * - cipher.CrackSearch: a whole crack, with its key length, iterations, candidates and best score;
+ * - cipher.CrackProgress: each new best result of a crack, so the best score can be followed over time.
+ *
+ * Run main to record a few operations and a crack and list the events that came back.
+ */
+public final class CipherMetrics implements CipherMetricsMXBean {
+
+    public static final String OBJECT_NAME = "cipher:type=CipherMetrics";
+
+    static final CipherMetrics INSTANCE = new CipherMetrics();
+
+    static {
+        if (Boolean.getBoolean("cipher.metrics.jmx")) {
+            register();
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////
+    /// Events                                                        //
+    ////////////////////////////////////////////////////////////////////
+
+    @Name("cipher.CipherOperation")
+    @Label("Cipher Operation")
+    @Category("Cipher")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class CipherEvent extends Event {
+        @Label("Cipher")
+        String cipher;
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Length")
+        @Description("Chars in")
+        int length;
+
+        transient long startNanos; // for the JMX timing, not recorded
+    }
+
+    @Name("cipher.Score")
+    @Label("Score")
+    @Category("Cipher")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ScoreEvent extends Event {
+        @Label("Scorer")
+        String scorer;
+
+        @Label("Length")
+        int length;
+    }
+
+    @Name("cipher.CrackSearch")
+    @Label("Crack Search")
+    @Category("Cipher")
+    @StackTrace(false)
+    static final class CrackEvent extends Event {
+        @Label("Cracker")
+        String cracker;
+
+        @Label("Key Length")
+        @Description("Key length or period last tried, 0 if the cracker has none")
+        int keyLength;
+
+        @Label("Iterations")
+        long iterations;
+
+        @Label("Candidates")
+        long candidates;
+
+        @Label("Candidates per Second")
+        double candidatesPerSecond;
+
+        @Label("Best Score")
+        double bestScore;
+    }
+
+    @Name("cipher.CrackProgress")
+    @Label("Crack Progress")
+    @Category("Cipher")
+    @StackTrace(false)
+    static final class ProgressEvent extends Event {
+        @Label("Score")
+        double score;
+
+        @Label("Key Length")
+        int keyLength;
+
+        @Label("Iterations")
+        long iterations;
+
+        @Label("Candidates")
+        long candidates;
+
+        @Label("Elapsed")
+        @Timespan
+        long elapsed;
+    }
+
+    ////////////////////////////////////////////////////////////////////
+    /// Counters                                                      //
+    ////////////////////////////////////////////////////////////////////
+
+    /** Calls, chars and nanoseconds for one operation of one cipher, or one scorer. */
+    static final class Counter {
+        final String name;
+        final LongAdder calls = new LongAdder();
+        final LongAdder chars = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        void reset() {
+            calls.reset();
+            chars.reset();
+            nanos.reset();
+        }
+    }
+
+    /** One cracker's searches. */
+    static final class CrackCounter {
+        final LongAdder searches = new LongAdder();
+        final LongAdder iterations = new LongAdder();
+        final LongAdder candidates = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        volatile double lastBest = Double.NaN;
+
+        void reset() {
+            searches.reset();
+            iterations.reset();
+            candidates.reset();
+            nanos.reset();
+            lastBest = Double.NaN;
+        }
+    }
+
+    private static final ClassValue<Counter[]> CIPHERS = new ClassValue<>() {
+        @Override
+        protected Counter[] computeValue(Class<?> type) {
+            // computeValue can race on first use; the map hands every racer the same counters
+            return new Counter[] {
+                INSTANCE.cipherCounters.computeIfAbsent(type.getSimpleName() + ".encrypt", Counter::new),
+                INSTANCE.cipherCounters.computeIfAbsent(type.getSimpleName() + ".decrypt", Counter::new),
+            };
+        }
+    };
+
+    private final Map<String, Counter> cipherCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> scoreCounters = new ConcurrentHashMap<>();
+    private final Map<String, CrackCounter> crackCounters = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private static volatile boolean timing;
+
+    private CipherMetrics() {}
+
+    /** Publish the counters over JMX. Safe to call more than once. */
+    public static void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Already published
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////
+    /// Hooks                                                         //
+    ////////////////////////////////////////////////////////////////////
+
+    /** Call at the start of encrypt() or decrypt(), and pass the event to end(). */
+    static CipherEvent begin() {
+        CipherEvent event = new CipherEvent();
+        event.begin();
+        if (timing) {
+            event.startNanos = System.nanoTime();
+        }
+        return event;
+    }
+
+    static void end(CipherEvent event, Cipher cipher, boolean encrypt, int length) {
+        Counter c = CIPHERS.get(cipher.getClass())[encrypt ? 0 : 1];
+        c.calls.increment();
+        c.chars.add(length);
+        if (event.startNanos != 0) {
+            c.nanos.add(System.nanoTime() - event.startNanos);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            commit(event, cipher, encrypt, length);
+        }
+    }
+
+    // Kept out of end() so end() stays small enough to inline and the event to be scalar replaced
+    private static void commit(CipherEvent event, Cipher cipher, boolean encrypt, int length) {
+        event.cipher = cipher.getClass().getSimpleName();
+        event.operation = encrypt ? "encrypt" : "decrypt";
+        event.length = length;
+        event.commit();
+    }
+
+    /** The counter a scorer keeps in a field and hands to scored(). */
+    static Counter scorer(String name) {
+        return INSTANCE.scoreCounters.computeIfAbsent(name, Counter::new);
+    }
+
+    static ScoreEvent beginScore() {
+        ScoreEvent event = new ScoreEvent();
+        event.begin();
+        return event;
+    }
+
+    static void scored(ScoreEvent event, Counter counter, int length) {
+        counter.calls.increment();
+        counter.chars.add(length);
+        event.end();
+        if (event.shouldCommit()) {
+            event.scorer = counter.name;
+            event.length = length;
+            event.commit();
+        }
+    }
+
+    /** Count a dictionary lookup; returns hit. */
+    static boolean lookup(boolean hit) {
+        (hit ? INSTANCE.hits : INSTANCE.misses).increment();
+        return hit;
+    }
+
+    /** A new best result in a crack. */
+    static void progress(double score, int keyLength, long iterations, long candidates, long elapsedNanos) {
+        ProgressEvent event = new ProgressEvent();
+        if (event.shouldCommit()) {
+            event.score = score;
+            event.keyLength = keyLength;
+            event.iterations = iterations;
+            event.candidates = candidates;
+            event.elapsed = elapsedNanos;
+            event.commit();
+        }
+    }
+
+    /** A crack that took elapsedNanos just finished. */
+    static void cracked(String cracker, int keyLength, long iterations, long candidates, double bestScore,
+            long elapsedNanos) {
+        CrackCounter c = INSTANCE.crackCounters.computeIfAbsent(cracker, k -> new CrackCounter());
+        c.searches.increment();
+        c.iterations.add(iterations);
+        c.candidates.add(candidates);
+        c.nanos.add(elapsedNanos);
+        c.lastBest = bestScore;
+
+        CrackEvent event = new CrackEvent();
+        if (event.shouldCommit()) {
+            event.cracker = cracker;
+            event.keyLength = keyLength;
+            event.iterations = iterations;
+            event.candidates = candidates;
+            event.candidatesPerSecond = elapsedNanos == 0 ? 0 : candidates * 1e9 / elapsedNanos;
+            event.bestScore = bestScore;
+            event.commit();
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////
+    /// MXBean                                                        //
+    ////////////////////////////////////////////////////////////////////
+
+    private static <V, T> Map<String, T> view(Map<String, V> counters, Function<V, T> read) {
+        Map<String, T> out = new TreeMap<>();
+        counters.forEach((k, v) -> out.put(k, read.apply(v)));
+        return out;
+    }
+
+    @Override
+    public Map<String, Long> getCipherCalls() {
+        return view(cipherCounters, c -> c.calls.sum());
+    }
+
+    @Override
+    public Map<String, Long> getCipherChars() {
+        return view(cipherCounters, c -> c.chars.sum());
+    }
+
+    @Override
+    public Map<String, Long> getCipherNanos() {
+        return view(cipherCounters, c -> c.nanos.sum());
+    }
+
+    @Override
+    public boolean isTiming() {
+        return timing;
+    }
+
+    @Override
+    public void setTiming(boolean on) {
+        timing = on;
+    }
+
+    @Override
+    public long getDictionaryHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getDictionaryMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public Map<String, Long> getScoreCalls() {
+        return view(scoreCounters, c -> c.calls.sum());
+    }
+
+    @Override
+    public Map<String, Long> getScoredChars() {
+        return view(scoreCounters, c -> c.chars.sum());
+    }
+
+    @Override
+    public Map<String, Long> getCrackSearches() {
+        return view(crackCounters, c -> c.searches.sum());
+    }
+
+    @Override
+    public Map<String, Long> getCrackIterations() {
+        return view(crackCounters, c -> c.iterations.sum());
+    }
+
+    @Override
+    public Map<String, Long> getCrackCandidates() {
+        return view(crackCounters, c -> c.candidates.sum());
+    }
+
+    @Override
+    public Map<String, Double> getCandidatesPerSecond() {
+        return view(crackCounters, c -> {
+            long nanos = c.nanos.sum();
+            return nanos == 0 ? 0.0 : c.candidates.sum() * 1e9 / nanos;
+        });
+    }
+
+    @Override
+    public Map<String, Double> getLastBestScore() {
+        return view(crackCounters, c -> c.lastBest);
+    }
+
+    @Override
+    public void reset() {
+        cipherCounters.values().forEach(Counter::reset);
+        scoreCounters.values().forEach(Counter::reset);
+        crackCounters.values().forEach(CrackCounter::reset);
+        hits.reset();
+        misses.reset();
+    }
+
+    /**
+     * Record every cipher event, the disabled-by-default ones included, around a few operations and one crack of each
+     * kind, then read the recording back and list how many of each event arrived, with the JMX view after it.
+     * @throws IllegalStateException If any event type never arrived or any JMX counter stayed empty.
+     */
+    public static void main(String[] args) throws Exception {
+        register();
+        Path file = Files.createTempFile("cipher", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : new String[] {"cipher.CipherOperation", "cipher.Score", "cipher.CrackSearch",
+                "cipher.CrackProgress"}) {
+                recording.enable(name).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+
+            String text = SampleText.TEXT;
+            CaesarCipher caesar = new CaesarCipher(3);
+            caesar.decrypt(caesar.encrypt(text));
+            Dictionary.wordCount(text);
+            Dictionary.isWord("qzxv");
+            caesar.cracker(new BigramScorer()).crack(caesar.encrypt(text));
+            ScrambleCipher scramble = new ScrambleCipher();
+            scramble.cracker(new SubstitutionSolver()).crack(scramble.encrypt(text));
+            String letters = new String(SampleText.letters(text));
+            ColTransCipher.cracker(new NgramScorer(), ColumnAnnealer.builder().build())
+                    .crack(new ColTransCipher(new KeyFactory(1).columnKey(7), null, true, false).encrypt(letters));
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        Map<String, Integer> counts = new TreeMap<>();
+        for (RecordedEvent e : RecordingFile.readAllEvents(file)) {
+            counts.merge(e.getEventType().getName(), 1, Integer::sum);
+        }
+        Files.delete(file);
+        List<String> missing = new ArrayList<>();
+        for (String name : new String[] {"cipher.CipherOperation", "cipher.Score", "cipher.CrackSearch",
+            "cipher.CrackProgress"}) {
+            int n = counts.getOrDefault(name, 0);
+            System.out.printf("%-24s %8d %s%n", name, n, n > 0 ? "" : "MISSING");
+            if (n == 0) {
+                missing.add(name);
+            }
+        }
+
+        CipherMetricsMXBean bean = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(),
+                new ObjectName(OBJECT_NAME), CipherMetricsMXBean.class);
+        System.out.println("CipherCalls: " + bean.getCipherCalls());
+        System.out.println("Dictionary: " + bean.getDictionaryHits() + " hits, " + bean.getDictionaryMisses()
+                + " misses");
+        System.out.println("ScoreCalls: " + bean.getScoreCalls());
+        System.out.println("CrackCandidates: " + bean.getCrackCandidates());
+        System.out.println("CandidatesPerSecond: " + bean.getCandidatesPerSecond());
+        System.out.println("LastBestScore: " + bean.getLastBestScore());
+
+        if (!counted(bean.getCipherCalls())) {
+            missing.add("CipherCalls");
+        }
+        if (bean.getDictionaryHits() == 0 || bean.getDictionaryMisses() == 0) {
+            missing.add("DictionaryHits/DictionaryMisses");
+        }
+        if (!counted(bean.getScoreCalls())) {
+            missing.add("ScoreCalls");
+        }
+        if (!counted(bean.getCrackCandidates())) {
+            missing.add("CrackCandidates");
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("Nothing recorded for " + missing);
+        }
+    }
+
+    private static boolean counted(Map<String, Long> counters) {
+        return counters.values().stream().anyMatch(v -> v > 0);
+    }
+}
@@ -0,0 +1,43 @@
+import java.util.Map;
+
+/**
+ * What CipherMetrics exposes over JMX, as cipher:type=CipherMetrics. Maps are keyed by cipher and operation
+ * ("PolyCipher.decrypt"), scorer ("quadgram") or cracker ("ColTransCipher"); counts run from JVM start or the last
+ * reset().
+ */
+public interface CipherMetricsMXBean {
+
+    Map<String, Long> getCipherCalls();
+
+    Map<String, Long> getCipherChars();
+
+    /** Time spent in encrypt() and decrypt(); only counted while Timing is on. */
+    Map<String, Long> getCipherNanos();
+
+    boolean isTiming();
+
+    /** Time every encrypt() and decrypt() call, at the cost of two clock reads each. */
+    void setTiming(boolean timing);
+
+    long getDictionaryHits();
+
+    long getDictionaryMisses();
+
+    Map<String, Long> getScoreCalls();
+
+    Map<String, Long> getScoredChars();
+
+    Map<String, Long> getCrackSearches();
+
+    Map<String, Long> getCrackIterations();
+
+    Map<String, Long> getCrackCandidates();
+
+    /** Candidates over time, across all of each cracker's searches. */
+    Map<String, Double> getCandidatesPerSecond();
+
+    /** Best score of each cracker's most recent search. */
+    Map<String, Double> getLastBestScore();
+
+    void reset();
+}
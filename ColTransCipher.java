@@ -3,25 +3,45 @@
  * March 23, 2025
  */
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 
 public class ColTransCipher extends Cipher {
 
     ArrayList<Character> key = new ArrayList<>();
     ArrayList<Character> keyOrder = new ArrayList<>();
 
+    // The key compiled into column permutations, rebuilt by setKey
+    private int[] readOrder = new int[0]; // readOrder[c] = plaintext column written out c-th
+    private int[] writeOrder = new int[0]; // writeOrder[p] = where plaintext column p is written out
+
     // Controls
     private boolean padding = true; // Controls padding of null characters
+    private Rand random = Rand.fast(); // Source of padding characters; they needn't be secret
 
     private boolean debug = false; // Controls debug output (verbose)
 
+    /** Widest key crack() will try. */
+    public static final int MAX_KEY_LENGTH = 40;
+
+    /**
+     * Widest key crack() solves exactly. The DP is cheap on the right width, where pruning removes almost every
+     * state, but wrong widths prune poorly and cost the full 2^k * k^2 above this.
+     */
+    static final int EXACT_KEY_LENGTH = 16;
+
+    /** How many of the most likely key lengths crack() solves before picking one. */
+    static final int LENGTHS_TRIED = 5;
+
+    /** Orders per key length the exact solver hands back for re-ranking. */
+    static final int RERANK = 5;
+
     ////////////////////////////////////////////////////////////////////
     /// Constructors                                                  //
     ////////////////////////////////////////////////////////////////////
@@ -123,157 +143,178 @@ public class ColTransCipher extends Cipher {
             }
             System.out.println();
         }
+
+        int cols = keyList.size();
+        int[] read = new int[cols];
+        int[] write = new int[cols];
+        for (int c = 0; c < cols; c++) {
+            read[c] = keyList.indexOf(sortedList.get(c));
+            write[read[c]] = c;
+        }
+        this.readOrder = read;
+        this.writeOrder = write;
+    }
+
+    /**
+     * Set where padding characters come from, e.g. Rand.seeded(...) for reproducible ciphertexts. Defaults to
+     * Rand.fast().
+     * @param random The generator to pad with.
+     */
+    public void setRandom(Rand random) {
+        this.random = random;
     }
 
     @Override
     /**
      * Encrypt the plaintext using the columnar transposition cipher.
+     * The plaintext fills a grid row by row and the columns are read out in key order, straight from the input
+     * into the output without building the grid. Empty cells (and NUL chars) are padded or skipped.
      * @param plaintext The plaintext to encrypt.
      * @return The encrypted ciphertext.
      */
     public String encrypt(String plaintext) {
-        int cols = key.size();
-        int rows = (int)(Math.ceil(plaintext.length() / (double)cols));
+        CipherMetrics.CipherEvent event = CipherMetrics.begin();
+        int[] read = readOrder;
+        int cols = read.length;
+        int len = plaintext.length();
+        int rows = (int)(Math.ceil(len / (double)cols));
+        int cells = rows * cols;
 
         char[] chars = plaintext.toCharArray();
-        char[][] beta = new char[rows][cols];
-
-        for (int i = 0; i < chars.length; i++) {
-            beta[i/cols][i%cols] = chars[i];
-        }
-
-        if (debug) {
-            for (int r = 0; r < rows; r++) {
-                for (int c = 0; c < cols; c++) {
-                    System.out.printf("%c ", beta[r][c]);
-                }
-                System.out.println();
-            }
-        }
-
-        char[][] orderedBeta = new char[rows][cols];
+        char[] out = new char[cells];
+        int n = 0;
         for (int c = 0; c < cols; c++) {
-            int order = key.indexOf(keyOrder.get(c));
-            for (int r = 0; r < rows; r++) {
-                orderedBeta[r][c] = beta[r][order];
-            }
-        }
-
-        if (debug) {
-            for (int r = 0; r < rows; r++) {
-                for (int c = 0; c < cols; c++) {
-                    System.out.printf("%c ", orderedBeta[r][c]);
-                }
-                System.out.println();
-            }
-        }
-
-        char[][] transpose = new char[cols][rows];
-        for (int r = 0; r < rows; r++) {
-            for (int c = 0; c < cols; c++) {
-                transpose[c][r] = orderedBeta[r][c];
-            }
-        }
-
-        if (debug) {
-            for (int c = 0; c < cols; c++) {
-                for (int r = 0; r < rows; r++) {
-                    System.out.printf("%c ", transpose[c][r]);
-                }
-                System.out.println();
-            }
-        }
-
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < rows * cols; i++) {
-            if ((int)transpose[i/rows][i%rows] == 0x00) {
-                if (padding) {
-                    sb.append(alphabet.get(Rand.randInt(alphabet.size())));
-                    continue;
-                } else {
+            for (int src = read[c]; src < cells; src += cols) {
+                char ch = src < len ? chars[src] : 0x00;
+                if (ch == 0x00) {
+                    if (padding) {
+                        out[n++] = alphabet.get(random.nextInt(alphabet.size()));
+                    }
                     continue;
                 }
+                out[n++] = ch;
             }
-            sb.append(transpose[i/rows][i%rows]);
         }
 
-        return sb.toString();
+        String result = new String(out, 0, n);
+        CipherMetrics.end(event, this, true, len);
+        return result;
     }
 
     @Override
     /**
      * Decrypt the ciphertext using the columnar transposition cipher.
+     * Each ciphertext column is one grid column; the rows are read back across the columns in plaintext order.
      * @param ciphertext The ciphertext to decrypt.
      * @return The decrypted plaintext.
      */
     public String decrypt(String ciphertext) {
-        int cols = key.size();
-        int rows = (int)(Math.ceil(ciphertext.length() / (double)cols));
+        CipherMetrics.CipherEvent event = CipherMetrics.begin();
+        int[] write = writeOrder;
+        int cols = write.length;
+        int len = ciphertext.length();
+        int rows = (int)(Math.ceil(len / (double)cols));
 
         char[] chars = ciphertext.toCharArray();
-
-        char[][] transpose = new char[cols][rows];
-        for (int i = 0; i < ciphertext.length(); i++) {
-                transpose[i/rows][i%rows] = chars[i];
-        }
-
-        if (debug) {
+        char[] out = new char[rows * cols];
+        int n = 0;
+        for (int r = 0; r < rows; r++) {
             for (int c = 0; c < cols; c++) {
-                for (int r = 0; r < rows; r++) {
-                    System.out.printf("%c ", transpose[c][r]);
+                int src = write[c] * rows + r;
+                char ch = src < len ? chars[src] : 0x00;
+                if (ch == 0x00) {
+                    if (padding) {
+                        out[n++] = alphabet.get(random.nextInt(alphabet.size()));
+                    }
+                    continue;
                 }
-                System.out.println();
-            }
-        }
-
-        char[][] orderedBeta = new char[rows][cols];
-        for (int c = 0; c < cols; c++) {
-            for (int r = 0; r < rows; r++) {
-                orderedBeta[r][c] = transpose[c][r];
+                out[n++] = ch;
             }
         }
 
-        if (debug) {
-            for (int r = 0; r < rows; r++) {
-                for (int c = 0; c < cols; c++) {
-                    System.out.printf("%c ", orderedBeta[r][c]);
-                }
-                System.out.println();
-            }
-        }
+        String result = new String(out, 0, n);
+        CipherMetrics.end(event, this, false, len);
+        return result;
+    }
 
-        char[][] beta = new char[rows][cols];
+    /** With padding every message is filled out to a whole number of rows. */
+    @Override
+    public int outputSize(int length) {
+        int cols = readOrder.length;
+        return padding ? (int) Math.ceil(length / (double) cols) * cols : length;
+    }
 
+    /**
+     * encrypt(String) over ASCII bytes, reading the grid columns straight out of in with no copy. Padding draws from
+     * the same Rand as encrypt(String), so a seeded cipher gives the same bytes as the String API.
+     */
+    @Override
+    public int encrypt(ByteBuffer in, ByteBuffer out) {
+        int len = in.remaining();
+        if (out.remaining() < outputSize(len)) {
+            throw new BufferOverflowException();
+        }
+        CipherMetrics.CipherEvent event = CipherMetrics.begin();
+        int[] read = readOrder;
+        int cols = read.length;
+        int rows = (int)(Math.ceil(len / (double)cols));
+        int cells = rows * cols;
+        int base = in.position();
+        int start = out.position();
         for (int c = 0; c < cols; c++) {
-            int order = keyOrder.indexOf(key.get(c));
-            for (int r = 0; r < rows; r++) {
-                beta[r][c] = orderedBeta[r][order];
-            }
-        }
-
-        if (debug) {
-            for (int r = 0; r < rows; r++) {
-                for (int c = 0; c < cols; c++) {
-                    System.out.printf("%c ", beta[r][c]);
+            for (int src = read[c]; src < cells; src += cols) {
+                byte b = src < len ? in.get(base + src) : 0x00;
+                if (b == 0x00) {
+                    if (padding) {
+                        out.put(padByte());
+                    }
+                    continue;
                 }
-                System.out.println();
+                out.put(b);
             }
         }
+        in.position(in.limit());
+        CipherMetrics.end(event, this, true, len);
+        return out.position() - start;
+    }
 
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < rows * cols; i++) {
-            if ((int)beta[i/cols][i%cols] == 0x00) {
-                if (padding) {
-                    sb.append(alphabet.get(Rand.randInt(alphabet.size())));
-                    continue;
-                } else {
+    /** decrypt(String) over ASCII bytes. */
+    @Override
+    public int decrypt(ByteBuffer in, ByteBuffer out) {
+        int len = in.remaining();
+        if (out.remaining() < outputSize(len)) {
+            throw new BufferOverflowException();
+        }
+        CipherMetrics.CipherEvent event = CipherMetrics.begin();
+        int[] write = writeOrder;
+        int cols = write.length;
+        int rows = (int)(Math.ceil(len / (double)cols));
+        int base = in.position();
+        int start = out.position();
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                int src = write[c] * rows + r;
+                byte b = src < len ? in.get(base + src) : 0x00;
+                if (b == 0x00) {
+                    if (padding) {
+                        out.put(padByte());
+                    }
                     continue;
                 }
+                out.put(b);
             }
-            sb.append(beta[i/cols][i%cols]);
         }
+        in.position(in.limit());
+        CipherMetrics.end(event, this, false, len);
+        return out.position() - start;
+    }
 
-        return sb.toString();
+    private byte padByte() {
+        char c = alphabet.get(random.nextInt(alphabet.size()));
+        if (c >= 0x80) {
+            throw new IllegalStateException("'" + c + "' can't pad a byte message");
+        }
+        return (byte) c;
     }
 
     /**
@@ -414,44 +455,27 @@ public class ColTransCipher extends Cipher {
     }
 
     /**
-     * Load the bigrams from a file and return them as a HashMap.
+     * Load the bigrams from a file.
      * @param filePath The path to the file containing the bigrams.
-     * @return A HashMap of bigrams and their frequencies.
+     * @return The bigram table, or Bigrams.model if the file can't be read.
      */
-    public static HashMap<String, Float> loadBigrams(String filePath) {
-        HashMap<String, Float> bigramMap = new HashMap<>();
-        
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                // Assuming each line is in the format "bigram frequency"
-                String[] parts = line.split("\\s+");
-                if (parts.length == 2) { // Ensure there are two parts
-                    bigramMap.put(parts[0], Float.parseFloat(parts[1])); // Add the bigram and its frequency to the map
-                }
-            }
+    public static BigramModel loadBigrams(String filePath) {
+        try {
+            return BigramModel.read(filePath);
         } catch (IOException e) {
             e.printStackTrace();
+            return Bigrams.model;
         }
-        
-        return bigramMap;
     }
 
     /**
      * Score the bigrams based on their frequency in the ciphertext and the dictionary. Gets the absolute value of the difference.
-     * @param bigrams The bigrams from the ciphertext.
+     * @param bigrams Relative bigram frequencies of the ciphertext, from BigramModel.histogram.
      * @param bigramDictionary The dictionary of bigrams and their frequencies.
      * @return The score of the bigrams.
      */
-    public static float scoreBigrams(HashMap<String, Float> bigrams, HashMap<String, Float> bigramDictionary) {
-        float totalScore = 0.0f;
-        for (String bigram : bigrams.keySet()) {
-            if (bigramDictionary.containsKey(bigram)) { // Ensure the bigram is in the dictionary
-                // Calculate the score based on the frequency of the bigram in the ciphertext and the dictionary
-                totalScore += Math.abs(bigrams.get(bigram) - bigramDictionary.get(bigram)); // Add the score to the total
-            }
-        }
-        return totalScore;
+    public static float scoreBigrams(float[] bigrams, BigramModel bigramDictionary) {
+        return bigramDictionary.distance(bigrams);
     }
     
     /**
@@ -470,102 +494,112 @@ public class ColTransCipher extends Cipher {
     }
 
     /**
-     * Crack the ciphertext passed to the function.
+     * Crack the ciphertext passed to the function, scoring with quadgrams.
      * @param ciphertext The ciphertext to crack.
-     * @return The plaintext.
+     * @return The key as column ranks, the plaintext and its score.
      */
-    public static void crack(String ciphertext) {
-        
-        // When replacing bigrams with the most common bigrams, replace UPPER CASE.
-
-        ArrayList<String> bigrams = splice("thisisateststring");
-
-        HashMap<String, Integer> sortedFrequencies = sortByFrequency(bigrams);
-        
-        System.out.println(sortedFrequencies);
-
-        int total = getTotalBigramCount(sortedFrequencies);
-        System.out.println("Total: " + total);
-
-        HashMap<String, Float> normalizedFrequencies = normalizeFrequencies(sortedFrequencies);
-        System.out.println(normalizedFrequencies);
-
-        HashMap<String, Float> bigramDictionary = loadBigrams("./bigrams.txt"); // Load bigrams from file using relative path
-        System.out.println(bigramDictionary.get("te"));
-
-        float score = scoreBigrams(normalizedFrequencies, bigramDictionary);
-        System.out.println("Score: " + score);
-
-        char[][] matrix = getCiphertextMatrix("abcdefghijklm", 3);
-
-        // Print out matrix of ciphertext
-        for (int i = 0; i < matrix.length; i++) {
-            for (int j = 0; j < matrix[i].length; j++) {
-                System.out.print(matrix[i][j] + " ");
-            }
-            System.out.println();
-        }
-        
-        // for(String bigram : bigrams) {
-        //     System.out.print(bigram + " ");
-        // }
-        
+    public static CrackResult<int[]> crack(String ciphertext) {
+        return crack(ciphertext, new NgramScorer());
     }
 
-    public static int findKeyLength(String text) {
-        int maxKeyLength = Math.min(20, text.length() / 2); // Limit the search range
-        double expectedIC = 0.068; // Approximate IC for English text
-        int bestKey = 1;
-        double closestDiff = Double.MAX_VALUE;
-
-        for (int keyLength = 2; keyLength <= maxKeyLength; keyLength++) {
-            double ic = averageIC(text, keyLength);
-            double diff = Math.abs(expectedIC - ic);
-
-            if (diff < closestDiff) {
-                closestDiff = diff;
-                bestKey = keyLength;
-            }
-        }
-
-        return bestKey;
+    /**
+     * Crack the ciphertext passed to the function.
+     *
+     * encrypt() pads every message out to a full grid, so only widths that divide the ciphertext length are
+     * possible; the LENGTHS_TRIED most likely of those, according to findKeyLengths, are solved. Widths up to
+     * EXACT_KEY_LENGTH are solved exactly and the top few orders re-ranked with the scorer; wider keys go to the
+     * annealer. The widths are then compared by the scorer as well.
+     *
+     * @param ciphertext The ciphertext to crack.
+     * @param scorer Fitness used to rank candidate plaintexts.
+     * @return The key as column ranks (usable with the int[] constructor), the plaintext and its score.
+     */
+    public static CrackResult<int[]> crack(String ciphertext, PlaintextScorer scorer) {
+        return crack(ciphertext, scorer, ColumnAnnealer.builder().build());
     }
 
-    private static double averageIC(String text, int keyLength) {
-        double totalIC = 0.0;
-        int validColumns = 0;
+    public static CrackResult<int[]> crack(String ciphertext, PlaintextScorer scorer, ColumnAnnealer annealer) {
+        return crack(ciphertext, scorer, annealer, CrackContext.unbounded());
+    }
 
-        for (int i = 0; i < keyLength; i++) {
-            StringBuilder column = new StringBuilder();
-            for (int j = i; j < text.length(); j += keyLength) {
-                column.append(text.charAt(j));
+    /**
+     * crack() under a deadline. Once the context is stopped no further key length is started and the annealer cuts
+     * its restarts short; an exact solve already running finishes. Each better order is offered, scored by the scorer.
+     */
+    public static CrackResult<int[]> crack(String ciphertext, PlaintextScorer scorer, ColumnAnnealer annealer,
+            CrackContext<int[]> context) {
+        char[] chars = ciphertext.toCharArray();
+        CrackResult<int[]> best = new CrackResult<>(new int[] {0}, ciphertext, scorer.score(ciphertext));
+        context.offer(best);
+        CrackContext<int[]> annealing = context.derive(
+                r -> new CrackResult<>(r.key(), r.plaintext(), scorer.score(r.plaintext())));
+        List<KeyLengthDetector.Candidate> lengths = findKeyLengths(ciphertext, MAX_KEY_LENGTH, true);
+        for (KeyLengthDetector.Candidate length : lengths.subList(0, Math.min(LENGTHS_TRIED, lengths.size()))) {
+            if (context.stopped()) {
+                break;
+            }
+            int k = length.length();
+            context.iterations(1);
+            context.keyLength(k);
+            List<CrackResult<int[]>> found = k <= EXACT_KEY_LENGTH
+                    ? crack(ciphertext, k, RERANK, scorer)
+                    : List.of(annealer.solve(chars, k, annealing));
+            if (k <= EXACT_KEY_LENGTH) {
+                context.candidates(found.size());
             }
-            double ic = calculateIC(column.toString());
-            if (!Double.isNaN(ic)) {
-                totalIC += ic;
-                validColumns++;
+            for (CrackResult<int[]> candidate : found) {
+                double score = scorer.score(candidate.plaintext());
+                if (score > best.score()) {
+                    best = new CrackResult<>(candidate.key(), candidate.plaintext(), score);
+                    context.offer(best);
+                }
             }
         }
-
-        return validColumns > 0 ? totalIC / validColumns : 0.0;
+        return context.finish("ColTransCipher", best);
     }
 
-    private static double calculateIC(String text) {
-        if (text.length() < 2) return Double.NaN;
-
-        Map<Character, Integer> freqMap = new HashMap<>();
-        for (char c : text.toCharArray()) {
-            freqMap.put(c, freqMap.getOrDefault(c, 0) + 1);
-        }
+    /** crack() as a Cracker. */
+    public static Cracker<int[]> cracker(PlaintextScorer scorer, ColumnAnnealer annealer) {
+        return (ciphertext, context) -> crack(ciphertext, scorer, annealer, context);
+    }
 
-        double sum = 0.0;
-        for (int count : freqMap.values()) {
-            sum += count * (count - 1);
+    /**
+     * The best column orders for a known key length, found exactly and re-ranked with the scorer.
+     * @param ciphertext The ciphertext, a full grid.
+     * @param keyLength The number of columns, at most ExactColumnSolver.MAX_COLUMNS.
+     * @param top How many orders to return at most.
+     * @param scorer Fitness used to re-rank them, e.g. a DictionaryScorer.
+     * @return The orders, best first, scored by the scorer.
+     */
+    public static List<CrackResult<int[]>> crack(String ciphertext, int keyLength, int top, PlaintextScorer scorer) {
+        List<CrackResult<int[]>> ranked = new ArrayList<>();
+        for (CrackResult<int[]> r : new ExactColumnSolver().solve(ciphertext.toCharArray(), keyLength, top)) {
+            ranked.add(new CrackResult<>(r.key(), r.plaintext(), scorer.score(r.plaintext())));
         }
+        ranked.sort((a, b) -> Double.compare(b.score(), a.score()));
+        return ranked;
+    }
 
-        return sum / (text.length() * (text.length() - 1));
+    /**
+     * Most likely key length of a padded ciphertext.
+     * @param text The ciphertext.
+     * @return The key length, or 1 if the text is too short to tell.
+     */
+    public static int findKeyLength(String text) {
+        List<KeyLengthDetector.Candidate> candidates = findKeyLengths(text, MAX_KEY_LENGTH, true);
+        return candidates.isEmpty() ? 1 : candidates.get(0).length();
     }
 
+    /**
+     * Rank the possible key lengths of a ciphertext.
+     * @param text The ciphertext.
+     * @param maxLength The longest key to consider.
+     * @param padded Whether the ciphertext was padded to a full grid, as encrypt() does by default.
+     * @return Candidate lengths with confidences, most likely first.
+     */
+    public static List<KeyLengthDetector.Candidate> findKeyLengths(String text, int maxLength, boolean padded) {
+        return new KeyLengthDetector(maxLength).detect(text, padded);
+    }
 
     ////////////////////////////////////////////////////////////////////
     /// Main                                                          //
@@ -583,7 +617,27 @@ public class ColTransCipher extends Cipher {
         int length = findKeyLength(ciphertext);
         System.out.println("Key Length: " + length);
 
-        crack("thisisateststring");
+        String message = "wheninthecourseofhumaneventsitbecomesnecessaryforonepeopletodissolvethepoliticalbands"
+                + "whichhaveconnectedthemwithanotherandtoassumeamongthepowersoftheearththeseparateandequalstation"
+                + "towhichthelawsofnatureandofnaturesgodentitlethemadecentrespecttotheopinionsofmankindrequires"
+                + "thattheyshoulddeclarethecauseswhichimpelthemtotheseparation";
+        ColTransCipher secret = new ColTransCipher("thunderstorming", null, true, false);
+        String encrypted = secret.encrypt(message);
+        System.out.println(encrypted);
+        CrackResult<int[]> result = crack(encrypted);
+        int[] ranks = result.key();
+        System.out.println("Key length: " + ranks.length);
+        System.out.println("Key ranks: " + Arrays.toString(ranks));
+        if (ranks.length <= 26) {
+            StringBuilder sb = new StringBuilder();
+            for (int r : ranks) {
+                sb.append((char) ('a' + r));
+            }
+            System.out.println("Key: " + sb);
+        }
+        String cracked = result.plaintext();
+        System.out.println(cracked);
+        System.out.println(cracked.startsWith(message) ? "Cracked" : "Not cracked");
         
     }
 }
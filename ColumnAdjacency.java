@@ -0,0 +1,99 @@
+/**
+ * How well each ciphertext column reads when placed directly left of each other one, for a columnar transposition
+ * of known width laid out as a full grid.
+ *
+ * pair(a, b) is the mean bigram log probability of (column a, row r) followed by (column b, row r) over all rows.
+ * wrap(a, b) is the same for the end of row r followed by the start of row r + 1, which only matters for the last and
+ * first plaintext columns. The fitness of a column order is the sum over its k - 1 adjacent pairs plus the wrap, so
+ * a move that rearranges a few columns only needs the handful of boundaries it touched re-scored.
+ */
+final class ColumnAdjacency {
+
+    private final int k;
+    private final int rows;
+    private final float[] pair;
+    private final float[] wrap;
+
+    /**
+     * @param cipher The ciphertext, cols * rows chars, column after column.
+     * @param k Number of columns; must divide cipher.length.
+     * @param model Bigram statistics.
+     */
+    ColumnAdjacency(char[] cipher, int k, BigramModel model) {
+        if (k < 2 || cipher.length % k != 0) {
+            throw new IllegalArgumentException(cipher.length + " chars don't fill a grid " + k + " columns wide");
+        }
+        this.k = k;
+        this.rows = cipher.length / k;
+        int[] codes = new int[cipher.length];
+        BigramModel.encode(cipher, 0, cipher.length, codes);
+        pair = new float[k * k];
+        wrap = new float[k * k];
+        for (int a = 0; a < k; a++) {
+            for (int b = 0; b < k; b++) {
+                if (a == b) {
+                    continue;
+                }
+                double p = 0;
+                double w = 0;
+                for (int r = 0; r < rows; r++) {
+                    p += bigram(model, codes[a * rows + r], codes[b * rows + r]);
+                    if (r + 1 < rows) {
+                        w += bigram(model, codes[a * rows + r], codes[b * rows + r + 1]);
+                    }
+                }
+                pair[a * k + b] = (float) (p / rows);
+                wrap[a * k + b] = (float) (w / rows);
+            }
+        }
+    }
+
+    /** Non-letters (padding, punctuation) neither help nor hurt. */
+    private static float bigram(BigramModel model, int a, int b) {
+        return a >= 0 && b >= 0 ? model.logProb(a, b) : 0f;
+    }
+
+    int size() {
+        return k;
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    float pair(int a, int b) {
+        return pair[a * k + b];
+    }
+
+    float wrap(int a, int b) {
+        return wrap[a * k + b];
+    }
+
+    /**
+     * Boundary b of an order: b < k - 1 is order[b] followed by order[b + 1], b == k - 1 is the row wrap.
+     */
+    float boundary(int[] order, int b) {
+        return b == k - 1 ? wrap[order[k - 1] * k + order[0]] : pair[order[b] * k + order[b + 1]];
+    }
+
+    double score(int[] order) {
+        double total = 0;
+        for (int b = 0; b < k; b++) {
+            total += boundary(order, b);
+        }
+        return total;
+    }
+
+    /**
+     * Write the plaintext grid, row after row, for a column order. order[p] is the ciphertext column that belongs at
+     * plaintext position p.
+     */
+    void decrypt(char[] cipher, int[] order, char[] out) {
+        for (int p = 0; p < k; p++) {
+            int src = order[p] * rows;
+            for (int r = 0; r < rows; r++) {
+                out[r * k + p] = cipher[src + r];
+            }
+        }
+    }
+}
@@ -0,0 +1,364 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Simulated annealing over column orders for a columnar transposition of known width.
+ *
+ * Each restart starts from a random order and proposes one of three moves per step: swap two columns, move a block of
+ * columns elsewhere, or reverse a block. Fitness is ColumnAdjacency's sum over neighbouring columns, so a swap or
+ * block move re-scores only the three or four boundaries it changed, and a reversal only the pairs inside it.
+ *
+ * Restarts are independent and run on a ForkJoin pool. They share the best order found so far, and the rest are
+ * called off once enough restarts have independently arrived at that same order, or once one reaches the optional
+ * fitness threshold.
+ */
+public final class ColumnAnnealer {
+
+    private final int restarts;
+    private final int iterationsPerColumn;
+    private final double startTemperature;
+    private final double endTemperature;
+    private final double stopAt;
+    private final int agree;
+    private final int parallelism;
+    private final long seed;
+    private final BigramModel model;
+
+    private ColumnAnnealer(Builder b) {
+        this.restarts = b.restarts;
+        this.iterationsPerColumn = b.iterationsPerColumn;
+        this.startTemperature = b.startTemperature;
+        this.endTemperature = b.endTemperature;
+        this.model = b.model;
+        this.stopAt = b.stopAt;
+        this.agree = b.agree;
+        this.parallelism = b.parallelism;
+        this.seed = b.seed;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Find the column order that reads best.
+     * @param cipher The ciphertext, a full grid read out column by column.
+     * @param k The number of columns, must divide cipher.length.
+     * @return order[p] = the ciphertext column that belongs at plaintext position p, i.e. the rank of key char p.
+     *         The score is the mean bigram log probability per column boundary.
+     */
+    public CrackResult<int[]> solve(char[] cipher, int k) {
+        return solve(cipher, k, CrackContext.unbounded());
+    }
+
+    /**
+     * solve() under a deadline: once the context is stopped, running restarts end at their next check and the rest
+     * don't start. Each finished restart's best order is offered to the context.
+     */
+    public CrackResult<int[]> solve(char[] cipher, int k, CrackContext<int[]> context) {
+        ColumnAdjacency adj = new ColumnAdjacency(cipher, k, model);
+        AtomicReference<Best> best = new AtomicReference<>(new Best(null, Double.NEGATIVE_INFINITY, 0));
+        AtomicBoolean stop = new AtomicBoolean();
+        long iterations = (long) iterationsPerColumn * k;
+
+        if (parallelism == 1 || restarts == 1) {
+            for (int i = 0; i < restarts && !stop.get(); i++) {
+                anneal(adj, cipher, iterations, new SplittableRandom(seed + i), best, stop, context);
+            }
+        } else {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(restarts);
+            for (int i = 0; i < restarts; i++) {
+                long s = seed + i;
+                tasks.add(ForkJoinTask.adapt(
+                        () -> anneal(adj, cipher, iterations, new SplittableRandom(s), best, stop, context)));
+            }
+            if (parallelism == ForkJoinPool.getCommonPoolParallelism() && ForkJoinTask.inForkJoinPool()) {
+                // Already on a pool, e.g. a CrackExecutor's: stay on it
+                ForkJoinTask.invokeAll(tasks);
+            } else if (parallelism == ForkJoinPool.getCommonPoolParallelism()) {
+                ForkJoinPool.commonPool().invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+            } else {
+                ForkJoinPool pool = new ForkJoinPool(parallelism);
+                try {
+                    pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        }
+
+        int[] order = best.get().order;
+        if (order == null) {
+            // Stopped before any restart ran
+            order = new int[k];
+            for (int i = 0; i < k; i++) {
+                order[i] = i;
+            }
+        }
+        char[] plain = new char[cipher.length];
+        adj.decrypt(cipher, order, plain);
+        return context.finish("ColumnAnnealer", new CrackResult<>(order, new String(plain), adj.score(order) / k));
+    }
+
+    /** Best order so far and how many restarts have ended on it. */
+    private static final class Best {
+        final int[] order;
+        final double score;
+        final int hits;
+
+        Best(int[] order, double score, int hits) {
+            this.order = order;
+            this.score = score;
+            this.hits = hits;
+        }
+
+        Best merge(Best other) {
+            if (Arrays.equals(order, other.order)) {
+                return new Best(order, score, hits + other.hits);
+            }
+            return other.score > score ? other : this;
+        }
+    }
+
+    private void anneal(ColumnAdjacency adj, char[] cipher, long iterations, SplittableRandom rnd,
+            AtomicReference<Best> shared, AtomicBoolean stop, CrackContext<int[]> context) {
+        if (stop.get() || context.stopped()) {
+            return;
+        }
+        int k = adj.size();
+        int[] order = new int[k];
+        for (int i = 0; i < k; i++) {
+            order[i] = i;
+        }
+        for (int i = k - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        double current = adj.score(order);
+        double best = current;
+        int[] bestOrder = order.clone();
+        double temperature = startTemperature;
+        double cooling = Math.pow(endTemperature / startTemperature, 1.0 / Math.max(1, iterations));
+
+        long it = 0;
+        for (; it < iterations; it++, temperature *= cooling) {
+            if ((it & 1023) == 0 && (stop.get() || context.stopped())) {
+                break;
+            }
+            int move = rnd.nextInt(3);
+            int lo;
+            int hi;
+            double delta;
+            int shift = 0;
+            if (move == 0) {
+                lo = rnd.nextInt(k);
+                hi = rnd.nextInt(k - 1);
+                if (hi >= lo) {
+                    hi++;
+                }
+                delta = swap(adj, order, lo, hi);
+            } else {
+                // A block of at least two columns, [lo, hi)
+                lo = rnd.nextInt(k - 1);
+                hi = lo + 2 + rnd.nextInt(k - lo - 1);
+                if (move == 1) {
+                    shift = 1 + rnd.nextInt(hi - lo - 1);
+                    delta = rotate(adj, order, lo, hi, shift, current);
+                } else {
+                    delta = reverse(adj, order, lo, hi, current);
+                }
+            }
+            if (delta >= 0 || rnd.nextDouble() < Math.exp(delta / temperature)) {
+                current += delta;
+                if (current > best + 1e-9) {
+                    best = current;
+                    System.arraycopy(order, 0, bestOrder, 0, k);
+                }
+            } else if (move == 0) {
+                swapColumns(order, lo, hi);
+            } else if (move == 1) {
+                rotateColumns(order, lo, hi, hi - lo - shift);
+            } else {
+                reverseColumns(order, lo, hi);
+            }
+        }
+
+        double exact = adj.score(bestOrder);
+        char[] plain = new char[cipher.length];
+        adj.decrypt(cipher, bestOrder, plain);
+        context.iterations(1);
+        context.candidates(it);
+        context.offer(new CrackResult<>(bestOrder.clone(), new String(plain), exact / k));
+        Best merged = shared.accumulateAndGet(new Best(bestOrder, exact, 1), Best::merge);
+        if (merged.hits >= agree || exact / k >= stopAt) {
+            stop.set(true);
+        }
+    }
+
+    /** Swap columns i and j and return the change in fitness, re-scoring only the boundaries next to them. */
+    private static double swap(ColumnAdjacency adj, int[] order, int i, int j) {
+        int k = order.length;
+        int[] touched = {Math.floorMod(i - 1, k), i, Math.floorMod(j - 1, k), j};
+        int n = 0;
+        for (int t = 0; t < touched.length; t++) {
+            boolean seen = false;
+            for (int u = 0; u < n; u++) {
+                seen |= touched[u] == touched[t];
+            }
+            if (!seen) {
+                touched[n++] = touched[t];
+            }
+        }
+        double before = 0;
+        for (int t = 0; t < n; t++) {
+            before += adj.boundary(order, touched[t]);
+        }
+        swapColumns(order, i, j);
+        double after = 0;
+        for (int t = 0; t < n; t++) {
+            after += adj.boundary(order, touched[t]);
+        }
+        return after - before;
+    }
+
+    /**
+     * Move order[lo, lo + s) to the end of [lo, hi) and return the change in fitness. Away from the ends only three
+     * boundaries change; a block touching either end moves the row wrap, so that case is re-scored in full.
+     */
+    private static double rotate(ColumnAdjacency adj, int[] order, int lo, int hi, int s, double current) {
+        int k = order.length;
+        if (lo == 0 || hi == k) {
+            rotateColumns(order, lo, hi, s);
+            return adj.score(order) - current;
+        }
+        int prev = order[lo - 1];
+        int next = order[hi];
+        int xFirst = order[lo];
+        int xLast = order[lo + s - 1];
+        int yFirst = order[lo + s];
+        int yLast = order[hi - 1];
+        double delta = adj.pair(prev, yFirst) + adj.pair(yLast, xFirst) + adj.pair(xLast, next)
+                - adj.pair(prev, xFirst) - adj.pair(xLast, yFirst) - adj.pair(yLast, next);
+        rotateColumns(order, lo, hi, s);
+        return delta;
+    }
+
+    /** Reverse order[lo, hi) and return the change in fitness: the two outer boundaries plus every pair inside. */
+    private static double reverse(ColumnAdjacency adj, int[] order, int lo, int hi, double current) {
+        int k = order.length;
+        if (lo == 0 || hi == k) {
+            reverseColumns(order, lo, hi);
+            return adj.score(order) - current;
+        }
+        double delta = adj.pair(order[lo - 1], order[hi - 1]) + adj.pair(order[lo], order[hi])
+                - adj.pair(order[lo - 1], order[lo]) - adj.pair(order[hi - 1], order[hi]);
+        for (int t = lo; t < hi - 1; t++) {
+            delta += adj.pair(order[t + 1], order[t]) - adj.pair(order[t], order[t + 1]);
+        }
+        reverseColumns(order, lo, hi);
+        return delta;
+    }
+
+    private static void swapColumns(int[] order, int i, int j) {
+        int t = order[i];
+        order[i] = order[j];
+        order[j] = t;
+    }
+
+    private static void reverseColumns(int[] order, int lo, int hi) {
+        for (int i = lo, j = hi - 1; i < j; i++, j--) {
+            swapColumns(order, i, j);
+        }
+    }
+
+    /** Rotate order[lo, hi) left by s, so order[lo + s] ends up first. */
+    private static void rotateColumns(int[] order, int lo, int hi, int s) {
+        reverseColumns(order, lo, lo + s);
+        reverseColumns(order, lo + s, hi);
+        reverseColumns(order, lo, hi);
+    }
+
+    public static final class Builder {
+        private int restarts = 4 * ForkJoinPool.getCommonPoolParallelism();
+        private int iterationsPerColumn = 20_000;
+        private double startTemperature = 0.3;
+        private double endTemperature = 0.01;
+        private double stopAt = Double.POSITIVE_INFINITY;
+        private int agree = 3;
+        private int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        private long seed = System.nanoTime();
+        private BigramModel model = Bigrams.model;
+
+        public Builder restarts(int restarts) {
+            if (restarts < 1) {
+                throw new IllegalArgumentException("restarts must be positive");
+            }
+            this.restarts = restarts;
+            return this;
+        }
+
+        /** Annealing steps per restart, per column of the key. */
+        public Builder iterationsPerColumn(int iterations) {
+            if (iterations < 1) {
+                throw new IllegalArgumentException("iterations must be positive");
+            }
+            this.iterationsPerColumn = iterations;
+            return this;
+        }
+
+        public Builder temperature(double start, double end) {
+            if (!(start > 0 && end > 0)) {
+                throw new IllegalArgumentException("temperatures must be positive");
+            }
+            this.startTemperature = start;
+            this.endTemperature = end;
+            return this;
+        }
+
+        /** Mean log probability per column boundary at which every restart stops. Off by default. */
+        public Builder stopAt(double meanLogProb) {
+            this.stopAt = meanLogProb;
+            return this;
+        }
+
+        /** Stop once this many restarts have ended on the same order. */
+        public Builder agree(int restarts) {
+            if (restarts < 1) {
+                throw new IllegalArgumentException("agree must be positive");
+            }
+            this.agree = restarts;
+            return this;
+        }
+
+        public Builder parallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("parallelism must be positive");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /** Restart i uses seed + i, so a fixed seed gives the same restarts (not the same winner, with early stop). */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public Builder model(BigramModel model) {
+            this.model = model;
+            return this;
+        }
+
+        public ColumnAnnealer build() {
+            return new ColumnAnnealer(this);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Time per key length for the exact Held-Karp column solver against the annealer, on the Gettysburg Address
+ * encrypted with a random key of each width. Reports whether each found the key. Run from the repo root, with
+ * -Xmx1g or so for the widest exact runs.
+ */
+public class ColumnSolverBenchmark {
+
+    static final String TEXT = "fourscoreandsevenyearsagoourfathersbroughtforthonthiscontinentanewnationconceivedin"
+            + "libertyanddedicatedtothepropositionthatallmenarecreatedequalnowweareengagedinagreatcivilwartesting"
+            + "whetherthatnationoranynationsoconceivedandsodedicatedcanlongendurewearemetonagreatbattlefieldofthat"
+            + "warwehavecometodedicateaportionofthatfieldasafinalrestingplaceforthosewhoheregavetheirlivesthatthat"
+            + "nationmightliveitisaltogetherfittingandproperthatweshoulddothisbutinalargersensewecannotdedicatewe"
+            + "cannotconsecratewecannothallowthisgroundthebravemenlivinganddeadwhostruggledherehaveconsecratedit"
+            + "faraboveourpoorpowertoaddordetracttheworldwilllittlenotenorlongrememberwhatwesayherebutitcannever"
+            + "forgetwhattheydidhere";
+
+    static int[] randomKey(int k, Random r) {
+        int[] key = new int[k];
+        for (int i = 0; i < k; i++) {
+            key[i] = i;
+        }
+        for (int i = k - 1; i > 0; i--) {
+            int j = r.nextInt(i + 1);
+            int t = key[i];
+            key[i] = key[j];
+            key[j] = t;
+        }
+        return key;
+    }
+
+    public static void main(String[] args) {
+        int max = args.length > 0 ? Integer.parseInt(args[0]) : ExactColumnSolver.MAX_COLUMNS;
+        Random r = new Random(11);
+        ExactColumnSolver exact = new ExactColumnSolver();
+        ColumnAnnealer annealer = ColumnAnnealer.builder().seed(5).build();
+        System.out.printf("%-4s %8s %12s %6s %12s %6s%n", "k", "letters", "exact ms", "found", "anneal ms", "found");
+        for (int k = 4; k <= max; k++) {
+            int[] key = randomKey(k, r);
+            int[] chars = new int[k];
+            for (int i = 0; i < k; i++) {
+                chars[i] = 'a' + key[i];
+            }
+            String cipher = new ColTransCipher(chars, null, true, false).encrypt(TEXT);
+            char[] c = cipher.toCharArray();
+
+            // One untimed pass so the JIT has compiled the DP before the first measured width
+            if (k == 4) {
+                exact.solve(c, k, 1);
+            }
+            long start = System.nanoTime();
+            List<CrackResult<int[]>> top = exact.solve(c, k, 5);
+            long exactNanos = System.nanoTime() - start;
+            boolean exactFound = top.stream().anyMatch(res -> Arrays.equals(res.key(), key));
+
+            start = System.nanoTime();
+            CrackResult<int[]> annealed = annealer.solve(c, k);
+            long annealNanos = System.nanoTime() - start;
+
+            System.out.printf("%-4d %8d %,12.1f %6s %,12.1f %6s%n", k, c.length, exactNanos / 1e6,
+                    exactFound ? "yes" : "no", annealNanos / 1e6, Arrays.equals(annealed.key(), key) ? "yes" : "no");
+        }
+    }
+}
@@ -0,0 +1,200 @@
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * What a crack job runs under: a deadline, a cancellation token, and a callback that hears about every better result
+ * as it is found. Crackers poll stopped() between units of work (restarts, climbs, key widths) and, once it turns
+ * true, return the best they have rather than finishing. They offer() each improvement, scored the way their final
+ * answer is, count their iterations and the candidates they scored, and pass the final answer through finish(), which
+ * stamps it with the iterations and elapsed time and reports the search to CipherMetrics.
+ *
+ * A context is for one job; it is safe to use from the job's worker threads at once. The clock starts when it is
+ * built.
+ *
+ * @param <K> The cracker's key type.
+ */
+public final class CrackContext<K> {
+
+    /** Cancels a job from outside. One token can be shared by several jobs. */
+    public static final class Token {
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        public void cancel() {
+            cancelled.set(true);
+        }
+
+        public boolean isCancelled() {
+            return cancelled.get();
+        }
+    }
+
+    private final long started;
+    private final long deadline; // System.nanoTime() at which to stop; started + Long.MAX_VALUE means never
+    private final Token token;
+    private final Consumer<CrackResult<K>> progress;
+    private final LongAdder iterations;
+    private final LongAdder candidates;
+    private volatile int keyLength;
+    private final CrackContext<?> parent;
+    private final Function<CrackResult<K>, ?> toParent;
+    private CrackResult<K> best;
+
+    private CrackContext(Builder<K> b) {
+        this.started = System.nanoTime();
+        this.deadline = started + b.timeout;
+        this.token = b.token != null ? b.token : new Token();
+        this.progress = b.progress;
+        this.iterations = new LongAdder();
+        this.candidates = new LongAdder();
+        this.parent = null;
+        this.toParent = null;
+    }
+
+    private <J> CrackContext(CrackContext<J> parent, Function<CrackResult<K>, CrackResult<J>> toParent) {
+        this.started = parent.started;
+        this.deadline = parent.deadline;
+        this.token = parent.token;
+        this.progress = null;
+        this.iterations = parent.iterations;
+        this.candidates = parent.candidates;
+        this.parent = parent;
+        this.toParent = toParent;
+    }
+
+    public static <K> Builder<K> builder() {
+        return new Builder<>();
+    }
+
+    /** No deadline, no callback, never cancelled. */
+    public static <K> CrackContext<K> unbounded() {
+        return new Builder<K>().build();
+    }
+
+    /**
+     * A context for a step with another key type, e.g. the int[] key search behind a Map-keyed crack. It shares this
+     * context's deadline, token and counts, and its offers reach this context converted by toParent.
+     */
+    public <J> CrackContext<J> derive(Function<CrackResult<J>, CrackResult<K>> toParent) {
+        return new CrackContext<>(this, toParent);
+    }
+
+    /** Whether the job should wrap up: it was cancelled or its time is up. */
+    public boolean stopped() {
+        return token.isCancelled() || System.nanoTime() - deadline >= 0;
+    }
+
+    public Token token() {
+        return token;
+    }
+
+    /** Count units of work done. */
+    public void iterations(long n) {
+        iterations.add(n);
+    }
+
+    public long iterations() {
+        return iterations.sum();
+    }
+
+    /** Count keys scored. */
+    public void candidates(long n) {
+        candidates.add(n);
+    }
+
+    public long candidates() {
+        return candidates.sum();
+    }
+
+    /** The key length or period being tried, for metrics. */
+    public void keyLength(int length) {
+        if (parent != null) {
+            parent.keyLength(length);
+        } else {
+            keyLength = length;
+        }
+    }
+
+    public long elapsedNanos() {
+        return System.nanoTime() - started;
+    }
+
+    /**
+     * A candidate result. If it beats the best so far it becomes the best and the progress callback hears of it,
+     * stamped with the work done so far.
+     */
+    @SuppressWarnings("unchecked")
+    public void offer(CrackResult<K> result) {
+        if (parent != null) {
+            ((CrackContext<Object>) parent).offer(((Function<CrackResult<K>, CrackResult<Object>>) toParent)
+                    .apply(result));
+            return;
+        }
+        CrackResult<K> stamped;
+        synchronized (this) {
+            if (best != null && result.score() <= best.score()) {
+                return;
+            }
+            stamped = result.withStats(iterations(), elapsedNanos());
+            best = stamped;
+            CipherMetrics.progress(stamped.score(), keyLength, stamped.iterations(), candidates(),
+                    stamped.elapsed().toNanos());
+            if (progress != null) {
+                progress.accept(stamped);
+            }
+        }
+    }
+
+    /** The best result offered so far, or null. */
+    public synchronized CrackResult<K> best() {
+        return best;
+    }
+
+    /**
+     * The cracker's answer, stamped with the iterations and time so far. Unless this context was derived, the search
+     * is reported to CipherMetrics under the cracker's name.
+     */
+    public CrackResult<K> finish(String cracker, CrackResult<K> result) {
+        CrackResult<K> stamped = result.withStats(iterations(), elapsedNanos());
+        if (parent == null) {
+            CipherMetrics.cracked(cracker, keyLength, stamped.iterations(), candidates(), stamped.score(),
+                    stamped.elapsed().toNanos());
+        }
+        return stamped;
+    }
+
+    public static final class Builder<K> {
+        private long timeout = Long.MAX_VALUE;
+        private Token token;
+        private Consumer<CrackResult<K>> progress;
+
+        private Builder() {}
+
+        /** Stop this long after the context is built. */
+        public Builder<K> timeout(Duration timeout) {
+            if (timeout.isNegative()) {
+                throw new IllegalArgumentException("timeout must not be negative");
+            }
+            Duration max = Duration.ofNanos(Long.MAX_VALUE);
+            this.timeout = timeout.compareTo(max) >= 0 ? Long.MAX_VALUE : timeout.toNanos();
+            return this;
+        }
+
+        public Builder<K> token(Token token) {
+            this.token = token;
+            return this;
+        }
+
+        /** Called with each new best result, from whichever thread found it, one call at a time. */
+        public Builder<K> progress(Consumer<CrackResult<K>> progress) {
+            this.progress = progress;
+            return this;
+        }
+
+        public CrackContext<K> build() {
+            return new CrackContext<>(this);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Runs crack jobs on a ForkJoin pool of its own. A job's timeout counts from when it starts running, not from when it
+ * was queued, so a long queue doesn't eat into each job's budget. The crackers' own parallel steps (parallel streams,
+ * ForkJoin restarts) run in the same pool, so the pool's parallelism bounds the CPU all jobs together use.
+ *
+ * Cancelling a job, or its timeout passing, doesn't interrupt anything: the cracker sees stopped() at its next check
+ * and returns the best it has, which is what get() then returns.
+ */
+public final class CrackExecutor implements AutoCloseable {
+
+    /** A submitted job. */
+    public static final class Job<K> {
+        private final CrackContext.Token token = new CrackContext.Token();
+        private volatile CrackContext<K> context;
+        private Future<CrackResult<K>> future;
+
+        /** Ask the job to stop; it still completes, with the best result so far. */
+        public void cancel() {
+            token.cancel();
+        }
+
+        public boolean isDone() {
+            return future.isDone();
+        }
+
+        /** The best result offered so far, or null if none yet or the job hasn't started. */
+        public CrackResult<K> best() {
+            CrackContext<K> c = context;
+            return c == null ? null : c.best();
+        }
+
+        public CrackResult<K> get() throws InterruptedException, ExecutionException {
+            return future.get();
+        }
+
+        public CrackResult<K> get(Duration wait) throws InterruptedException, ExecutionException, TimeoutException {
+            return future.get(wait.toNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final Set<Job<?>> jobs = ConcurrentHashMap.newKeySet(); // submitted and not yet finished
+
+    public CrackExecutor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public CrackExecutor(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Queue a job.
+     * @param cracker The attack.
+     * @param ciphertext What to crack.
+     * @param timeout Longest the job may run once started, or null for no limit.
+     * @param progress Hears each better result as it is found; may be null.
+     */
+    public <K> Job<K> submit(Cracker<K> cracker, String ciphertext, Duration timeout,
+            Consumer<CrackResult<K>> progress) {
+        Job<K> job = new Job<>();
+        jobs.add(job);
+        try {
+            job.future = pool.submit(() -> {
+                try {
+                    CrackContext.Builder<K> b = CrackContext.<K>builder().token(job.token).progress(progress);
+                    if (timeout != null) {
+                        b.timeout(timeout);
+                    }
+                    CrackContext<K> context = b.build();
+                    job.context = context;
+                    return cracker.crack(ciphertext, context);
+                } finally {
+                    jobs.remove(job);
+                }
+            });
+        } catch (RuntimeException e) {
+            jobs.remove(job);
+            throw e;
+        }
+        return job;
+    }
+
+    /** Queue one job per ciphertext, each with the same timeout and no progress callback. */
+    public <K> List<Job<K>> submitAll(Cracker<K> cracker, List<String> ciphertexts, Duration timeout) {
+        List<Job<K>> jobs = new ArrayList<>(ciphertexts.size());
+        for (String c : ciphertexts) {
+            jobs.add(submit(cracker, c, timeout, null));
+        }
+        return jobs;
+    }
+
+    /**
+     * Cancel every queued and running job and wait for the pool to drain. Running jobs stop at their cracker's next
+     * stopped() check; queued ones never start.
+     */
+    @Override
+    public void close() {
+        // The crackers don't look at interrupts, so shutdownNow() alone would leave running jobs going
+        for (Job<?> job : jobs) {
+            job.cancel();
+        }
+        pool.shutdownNow();
+        try {
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
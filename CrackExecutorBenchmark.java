@@ -0,0 +1,96 @@
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Many crack jobs at once under a per-job timeout: for each timeout, queue the same mixed batch of ScrambleCipher,
+ * ColTransCipher and PolyCipher ciphertexts on a CrackExecutor and report how many came back right, the mean and
+ * longest run time of a job, and the wall time of the batch. A job's run time should stay close to its timeout
+ * plus the one unit of work it can't interrupt. Run from the repo root.
+ *
+ * Usage: CrackExecutorBenchmark [jobs per cipher, default 8] [threads, default all cores]
+ */
+public class CrackExecutorBenchmark {
+
+    static final Duration[] TIMEOUTS = {Duration.ofMillis(20), Duration.ofMillis(100), Duration.ofMillis(500),
+        Duration.ofSeconds(5)};
+
+    /** Share of chars a result must get right to count as cracked. */
+    static final double SOLVED = 0.9;
+
+    public static void main(String[] args) throws Exception {
+        int perCipher = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        KeyFactory keys = new KeyFactory(21);
+        String text = NgramBenchmark.TEXT;
+        String letters = new String(NgramBenchmark.letters(text));
+        String[] names = {"lower", "upper", "numbers", "punctuation"};
+        String prose = PolyCipher.clean(BenchmarkSuite.repeat(
+                "We hold these truths to be self evident, that all men are created equal. " + text, 1500));
+
+        List<String> plains = new ArrayList<>();
+        List<String> ciphers = new ArrayList<>();
+        List<Cracker<?>> crackers = new ArrayList<>();
+        for (int i = 0; i < perCipher; i++) {
+            ScrambleCipher scramble = new ScrambleCipher(new String[] {"lower"},
+                    keys.permutation(Cipher.getAlphabet(new String[] {"lower"})));
+            plains.add(text);
+            ciphers.add(scramble.encrypt(text));
+            crackers.add(scramble.cracker(new SubstitutionSolver()));
+
+            ColTransCipher colTrans = new ColTransCipher(keys.columnKey(8 + i % 8), null, true, false);
+            colTrans.setRandom(Rand.seeded(i));
+            plains.add(letters);
+            ciphers.add(colTrans.encrypt(letters));
+            crackers.add(ColTransCipher.cracker(new NgramScorer(), ColumnAnnealer.builder().build()));
+
+            PolyCipher poly = new PolyCipher(keys.runningKey(5 + i, Cipher.getAlphabet(names)), names);
+            poly.setSquare(keys.square(Cipher.getAlphabet(names)));
+            plains.add(prose);
+            ciphers.add(poly.encrypt(prose));
+            crackers.add(new PolyCracker());
+        }
+
+        System.out.printf("%d jobs, %d threads%n", ciphers.size(), threads);
+        System.out.printf("%-10s %10s %12s %12s %10s%n", "timeout", "cracked", "mean ms", "max ms", "wall ms");
+        for (Duration timeout : TIMEOUTS) {
+            try (CrackExecutor executor = new CrackExecutor(threads)) {
+                long start = System.nanoTime();
+                List<CrackExecutor.Job<?>> jobs = new ArrayList<>();
+                for (int i = 0; i < ciphers.size(); i++) {
+                    jobs.add(submit(executor, crackers.get(i), ciphers.get(i), timeout));
+                }
+                int cracked = 0;
+                double total = 0;
+                double max = 0;
+                for (int i = 0; i < jobs.size(); i++) {
+                    CrackResult<?> r = jobs.get(i).get();
+                    double ms = r.elapsed().toNanos() / 1e6;
+                    total += ms;
+                    max = Math.max(max, ms);
+                    if (right(r.plaintext(), plains.get(i)) >= SOLVED) {
+                        cracked++;
+                    }
+                }
+                System.out.printf("%-10s %6d/%-3d %,12.1f %,12.1f %,10.0f%n", timeout.toMillis() + " ms", cracked,
+                        jobs.size(), total / jobs.size(), max, (System.nanoTime() - start) / 1e6);
+            }
+        }
+    }
+
+    private static <K> CrackExecutor.Job<K> submit(CrackExecutor executor, Cracker<K> cracker, String ciphertext,
+            Duration timeout) {
+        return executor.submit(cracker, ciphertext, timeout, null);
+    }
+
+    static double right(String out, String plain) {
+        int n = Math.min(out.length(), plain.length());
+        int same = 0;
+        for (int i = 0; i < n; i++) {
+            if (out.charAt(i) == plain.charAt(i)) {
+                same++;
+            }
+        }
+        return (double) same / Math.max(1, plain.length());
+    }
+}
@@ -0,0 +1,60 @@
+import java.time.Duration;
+
+/**
+ * What a cracker found: the key, the plaintext that key produces, and the fitness it scored. Higher scores are
+ * better; scores are only comparable between results from the same scorer. Results that came through a CrackContext
+ * also say how much work went into them: the cracker's iterations (restarts, climbs, widths; what counts depends on
+ * the cracker) and the time since the context was built.
+ *
+ * @param <K> The key type, e.g. Integer for Caesar or int[] column ranks for ColTransCipher.
+ */
+public final class CrackResult<K> {
+
+    private final K key;
+    private final String plaintext;
+    private final double score;
+    private final long iterations;
+    private final long elapsedNanos;
+
+    public CrackResult(K key, String plaintext, double score) {
+        this(key, plaintext, score, 0, 0);
+    }
+
+    public CrackResult(K key, String plaintext, double score, long iterations, long elapsedNanos) {
+        this.key = key;
+        this.plaintext = plaintext;
+        this.score = score;
+        this.iterations = iterations;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public K key() {
+        return key;
+    }
+
+    public String plaintext() {
+        return plaintext;
+    }
+
+    public double score() {
+        return score;
+    }
+
+    public long iterations() {
+        return iterations;
+    }
+
+    public Duration elapsed() {
+        return Duration.ofNanos(elapsedNanos);
+    }
+
+    /** The same result with the given work figures. */
+    public CrackResult<K> withStats(long iterations, long elapsedNanos) {
+        return new CrackResult<>(key, plaintext, score, iterations, elapsedNanos);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.2f\t%s", score, plaintext);
+    }
+}
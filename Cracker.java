@@ -0,0 +1,23 @@
+/**
+ * A ciphertext-only attack that can be time-boxed, cancelled and watched. Each cipher hands out its own:
+ * CaesarCipher.cracker(), ScrambleCipher.cracker(), ColTransCipher.cracker(), and PolyCracker itself. Run many at once
+ * with a CrackExecutor.
+ *
+ * @param <K> The key type the attack recovers.
+ */
+@FunctionalInterface
+public interface Cracker<K> {
+
+    /**
+     * Crack the ciphertext, polling context.stopped() and returning the best found so far once it is.
+     * @param ciphertext The ciphertext.
+     * @param context Deadline, cancellation and progress for this job.
+     * @return The best result, stamped by context.finish() with the iterations and time it took.
+     */
+    CrackResult<K> crack(String ciphertext, CrackContext<K> context);
+
+    /** Crack with no deadline. */
+    default CrackResult<K> crack(String ciphertext) {
+        return crack(ciphertext, CrackContext.unbounded());
+    }
+}
@@ -0,0 +1,388 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The word list as a minimal deterministic acyclic automaton (DAFSA). Words sharing a suffix share states, so the
+ * 370k dictionary collapses to a few hundred thousand edges held in primitive arrays.
+ *
+ * State s owns the edges [edgeStart[s], edgeStart[s + 1]), sorted by label. A word is accepted if walking its chars
+ * from ROOT ends on a final state. Lookups lowercase one char at a time and never allocate.
+ *
+ * Built with the incremental algorithm for sorted input from Daciuk, Mihov, Watson and Watson, "Incremental
+ * Construction of Minimal Acyclic Finite-State Automata" (2000).
+ */
+public final class DafsaLexicon implements Lexicon {
+
+    public static final int ROOT = 0;
+
+    static final int MAGIC = 0x44465331; // "DFS1"
+    static final int HEADER_BYTES = 40;
+
+    private final int[] edgeStart;
+    private final char[] labels;
+    private final int[] targets;
+    private final long[] finals;
+    private final int words;
+
+    DafsaLexicon(int[] edgeStart, char[] labels, int[] targets, long[] finals, int words) {
+        this.edgeStart = edgeStart;
+        this.labels = labels;
+        this.targets = targets;
+        this.finals = finals;
+        this.words = words;
+    }
+
+    /**
+     * Build the automaton. Words are lowercased, sorted and de-duplicated first, so any order is fine.
+     */
+    public static DafsaLexicon build(Collection<String> input) {
+        String[] sorted = new String[input.size()];
+        int n = 0;
+        for (String w : input) {
+            sorted[n++] = w.toLowerCase();
+        }
+        Arrays.sort(sorted, 0, n);
+
+        Node root = new Node();
+        Map<Node, Node> register = new HashMap<>();
+        String prev = null;
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            String w = sorted[i];
+            if (w.equals(prev)) {
+                continue;
+            }
+            int common = 0;
+            if (prev != null) {
+                int max = Math.min(prev.length(), w.length());
+                while (common < max && prev.charAt(common) == w.charAt(common)) {
+                    common++;
+                }
+            }
+            Node last = root;
+            for (int j = 0; j < common; j++) {
+                last = last.lastChild();
+            }
+            if (last.n > 0) {
+                replaceOrRegister(last, register);
+            }
+            for (int j = common; j < w.length(); j++) {
+                Node child = new Node();
+                last.add(w.charAt(j), child);
+                last = child;
+            }
+            last.fin = true;
+            prev = w;
+            count++;
+        }
+        if (root.n > 0) {
+            replaceOrRegister(root, register);
+        }
+        return flatten(root, count);
+    }
+
+    private static void replaceOrRegister(Node state, Map<Node, Node> register) {
+        Node child = state.lastChild();
+        if (child.n > 0) {
+            replaceOrRegister(child, register);
+        }
+        Node existing = register.get(child);
+        if (existing != null) {
+            state.next[state.n - 1] = existing;
+        } else {
+            child.id = register.size();
+            register.put(child, child);
+        }
+    }
+
+    /**
+     * Number the states depth first from the root and copy the edges into flat arrays. Depth first keeps a word's
+     * states close together in memory, which matters more for lookup speed than anything else here.
+     */
+    private static DafsaLexicon flatten(Node root, int count) {
+        List<Node> order = new ArrayList<>();
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        int edges = 0;
+        while (!stack.isEmpty()) {
+            Node s = stack.pop();
+            if (s.slot >= 0) {
+                continue;
+            }
+            s.slot = order.size();
+            order.add(s);
+            edges += s.n;
+            for (int i = s.n - 1; i >= 0; i--) {
+                if (s.next[i].slot < 0) {
+                    stack.push(s.next[i]);
+                }
+            }
+        }
+        int states = order.size();
+        int[] edgeStart = new int[states + 1];
+        char[] labels = new char[edges];
+        int[] targets = new int[edges];
+        long[] finals = new long[(states + 63) >>> 6];
+        int e = 0;
+        for (int id = 0; id < states; id++) {
+            Node s = order.get(id);
+            edgeStart[id] = e;
+            if (s.fin) {
+                finals[id >>> 6] |= 1L << id;
+            }
+            for (int i = 0; i < s.n; i++) {
+                labels[e] = s.labels[i];
+                targets[e] = s.next[i].slot;
+                e++;
+            }
+        }
+        edgeStart[states] = e;
+        return new DafsaLexicon(edgeStart, labels, targets, finals, count);
+    }
+
+    /**
+     * Write the automaton as a snapshot that load() can read back without rebuilding.
+     *
+     * Layout (big endian): magic "DFS1", words i32, states i32, edges i32, source size i64, source modified i64,
+     * payload CRC32 i32, reserved i32, then edgeStart i32[states + 1], targets i32[edges], finals i64[],
+     * labels u16[edges].
+     *
+     * @param path Where to write.
+     * @param sourceSize Size of the word list this was built from, so a stale snapshot can be detected.
+     * @param sourceModified Modification time of that word list, in milliseconds.
+     */
+    public void save(Path path, long sourceSize, long sourceModified) throws IOException {
+        int states = states();
+        int edges = edges();
+        long payload = 4L * (states + 1) + 4L * edges + 8L * finals.length + 2L * edges;
+        ByteBuffer buf = ByteBuffer.allocate((int) (HEADER_BYTES + payload));
+        buf.position(HEADER_BYTES);
+        buf.asIntBuffer().put(edgeStart).put(targets);
+        buf.position(buf.position() + 4 * (edgeStart.length + targets.length));
+        buf.asLongBuffer().put(finals);
+        buf.position(buf.position() + 8 * finals.length);
+        buf.asCharBuffer().put(labels);
+        buf.putInt(0, MAGIC);
+        buf.putInt(4, words);
+        buf.putInt(8, states);
+        buf.putInt(12, edges);
+        buf.putLong(16, sourceSize);
+        buf.putLong(24, sourceModified);
+        buf.putInt(32, crc(buf, HEADER_BYTES, (int) payload));
+        buf.clear();
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+        }
+    }
+
+    /**
+     * Read a snapshot written by save(). The file is memory mapped and each array is copied out with one bulk get.
+     *
+     * @param path The snapshot.
+     * @param sourceSize Expected word list size, or -1 to accept any.
+     * @param sourceModified Expected word list modification time, or -1 to accept any.
+     * @return The automaton, or null if the snapshot is for a different word list.
+     * @throws IOException If the file can't be read or is corrupt.
+     */
+    public static DafsaLexicon load(Path path, long sourceSize, long sourceModified) throws IOException {
+        MappedByteBuffer map;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        if (map.limit() < HEADER_BYTES || map.getInt(0) != MAGIC) {
+            throw new IOException("Not a dictionary snapshot: " + path);
+        }
+        if ((sourceSize >= 0 && map.getLong(16) != sourceSize)
+                || (sourceModified >= 0 && map.getLong(24) != sourceModified)) {
+            return null;
+        }
+        int words = map.getInt(4);
+        int states = map.getInt(8);
+        int edges = map.getInt(12);
+        long payload = 4L * (states + 1) + 4L * edges + 8L * ((states + 63) >>> 6) + 2L * edges;
+        if (states < 1 || edges < 0 || HEADER_BYTES + payload != map.limit()) {
+            throw new IOException("Corrupt dictionary snapshot: " + path);
+        }
+        if (crc(map, HEADER_BYTES, (int) payload) != map.getInt(32)) {
+            throw new IOException("Dictionary snapshot checksum mismatch: " + path);
+        }
+        int[] edgeStart = new int[states + 1];
+        int[] targets = new int[edges];
+        long[] finals = new long[(states + 63) >>> 6];
+        char[] labels = new char[edges];
+        map.position(HEADER_BYTES);
+        map.asIntBuffer().get(edgeStart).get(targets);
+        map.position(map.position() + 4 * (edgeStart.length + targets.length));
+        map.asLongBuffer().get(finals);
+        map.position(map.position() + 8 * finals.length);
+        map.asCharBuffer().get(labels);
+        return new DafsaLexicon(edgeStart, labels, targets, finals, words);
+    }
+
+    private static int crc(ByteBuffer buf, int offset, int length) {
+        CRC32 crc = new CRC32();
+        ByteBuffer slice = buf.duplicate();
+        slice.position(offset).limit(offset + length);
+        crc.update(slice);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Follow the edge labelled c out of state.
+     * @return The next state, or -1 if there is no such edge.
+     */
+    public int step(int state, char c) {
+        int lo = edgeStart[state];
+        int hi = edgeStart[state + 1] - 1;
+        // Most states have a handful of edges, only the ones near the root are worth a binary search
+        while (hi - lo > 4) {
+            int mid = (lo + hi) >>> 1;
+            if (labels[mid] < c) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int e = lo; e <= hi; e++) {
+            char l = labels[e];
+            if (l == c) {
+                return targets[e];
+            }
+            if (l > c) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    private static char lower(char c) {
+        if (c < 128) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(c);
+    }
+
+    public boolean isFinal(int state) {
+        return (finals[state >>> 6] & (1L << state)) != 0;
+    }
+
+    private int walk(CharSequence s, int from, int to) {
+        int state = ROOT;
+        for (int i = from; i < to && state >= 0; i++) {
+            state = step(state, lower(s.charAt(i)));
+        }
+        return state;
+    }
+
+    private int walk(char[] s, int from, int to) {
+        int state = ROOT;
+        for (int i = from; i < to && state >= 0; i++) {
+            state = step(state, lower(s[i]));
+        }
+        return state;
+    }
+
+    @Override
+    public boolean isWord(CharSequence s, int from, int to) {
+        int state = walk(s, from, to);
+        return state >= 0 && isFinal(state);
+    }
+
+    @Override
+    public boolean isWord(char[] s, int from, int to) {
+        int state = walk(s, from, to);
+        return state >= 0 && isFinal(state);
+    }
+
+    @Override
+    public boolean hasPrefix(CharSequence s, int from, int to) {
+        return walk(s, from, to) >= 0;
+    }
+
+    @Override
+    public boolean hasPrefix(char[] s, int from, int to) {
+        return walk(s, from, to) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return words;
+    }
+
+    public int states() {
+        return edgeStart.length - 1;
+    }
+
+    public int edges() {
+        return labels.length;
+    }
+
+    /**
+     * Build-time state. Once a node is in the register it is never modified again, which is what makes it safe to
+     * use as a hash key.
+     */
+    private static final class Node {
+        char[] labels = new char[2];
+        Node[] next = new Node[2];
+        int n;
+        boolean fin;
+        int id = -1;   // order of registration, children always get theirs before their parents hash
+        int slot = -1; // position in the flattened arrays
+
+        Node lastChild() {
+            return next[n - 1];
+        }
+
+        void add(char c, Node child) {
+            if (n == labels.length) {
+                labels = Arrays.copyOf(labels, n * 2);
+                next = Arrays.copyOf(next, n * 2);
+            }
+            labels[n] = c;
+            next[n] = child;
+            n++;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Node)) {
+                return false;
+            }
+            Node other = (Node) o;
+            if (fin != other.fin || n != other.n) {
+                return false;
+            }
+            for (int i = 0; i < n; i++) {
+                if (labels[i] != other.labels[i] || next[i] != other.next[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = fin ? 1 : 0;
+            for (int i = 0; i < n; i++) {
+                h = h * 31 + labels[i];
+                h = h * 31 + next[i].id;
+            }
+            return h;
+        }
+    }
+}
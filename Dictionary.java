@@ -1,36 +1,126 @@
-import java.io.File;
+import java.io.BufferedReader;
+import java.io.FileReader;
 import java.io.IOException;
-import java.util.Set;
-import java.util.HashSet;
-import java.util.Scanner;
-import java.util.regex.Pattern;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Dictionary {
 
-    public static Set<String> dict = new HashSet<>();
+    /** The word list, one word per line. Override with -Ddictionary.path. */
+    static final String DICT_PATH = System.getProperty("dictionary.path", "dict.txt");
+
+    /** Snapshot written by DictionaryCompiler. Override with -Ddictionary.snapshot, or set it to "none" to skip. */
+    static final String SNAPSHOT_PATH = System.getProperty("dictionary.snapshot", "dict.bin");
+
+    /**
+     * The loaded word list. A DafsaLexicon unless -Ddictionary.backend=hash asks for the old HashSet.
+     */
+    public static final Lexicon lexicon;
 
     static {
         try {
-            Scanner scan = new Scanner(new File("dict.txt"));
-            while(scan.hasNext()) {
-                dict.add(scan.nextLine());
-            }
+            lexicon = load();
         } catch (IOException ioEx) {
             ioEx.printStackTrace();
             throw new RuntimeException(ioEx);
         }
     }
 
+    /**
+     * Prefer the compiled snapshot when it matches dict.txt (or dict.txt is missing), otherwise build from text.
+     */
+    private static Lexicon load() throws IOException {
+        if ("hash".equalsIgnoreCase(System.getProperty("dictionary.backend"))) {
+            return new HashLexicon(readWords(DICT_PATH));
+        }
+        Path text = Paths.get(DICT_PATH);
+        Path snapshot = Paths.get(SNAPSHOT_PATH);
+        if (!SNAPSHOT_PATH.equals("none") && Files.isReadable(snapshot)) {
+            boolean haveText = Files.exists(text);
+            long size = haveText ? Files.size(text) : -1;
+            long modified = haveText ? Files.getLastModifiedTime(text).toMillis() : -1;
+            try {
+                DafsaLexicon lex = DafsaLexicon.load(snapshot, size, modified);
+                if (lex != null) {
+                    return lex;
+                }
+            } catch (IOException ioEx) {
+                // Fall through to dict.txt, a bad snapshot shouldn't stop us when the text is there
+                if (!haveText) {
+                    throw ioEx;
+                }
+            }
+        }
+        return DafsaLexicon.build(readWords(DICT_PATH));
+    }
+
+    static List<String> readWords(String path) throws IOException {
+        List<String> words = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(path))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                words.add(line);
+            }
+        }
+        return words;
+    }
+
     public static boolean isWord(String word) {
-        return dict.contains(word.toLowerCase());
+        return CipherMetrics.lookup(lexicon.isWord(word, 0, word.length()));
+    }
+
+    public static boolean isWord(CharSequence text, int from, int to) {
+        return CipherMetrics.lookup(lexicon.isWord(text, from, to));
+    }
+
+    public static boolean isWord(char[] text, int from, int to) {
+        return CipherMetrics.lookup(lexicon.isWord(text, from, to));
+    }
+
+    /**
+     * Whether any word starts with text[from, to). Lets a search drop a candidate as soon as it can't be completed.
+     */
+    public static boolean hasPrefix(CharSequence text, int from, int to) {
+        return lexicon.hasPrefix(text, from, to);
+    }
+
+    public static boolean hasPrefix(char[] text, int from, int to) {
+        return lexicon.hasPrefix(text, from, to);
     }
 
     public static int wordCount(String sentence) {
-        String[] words = sentence.split(Pattern.quote(" "));
+        return wordCount(sentence, 0, sentence.length());
+    }
+
+    /**
+     * Count the space separated words in text[from, to) that are in the dictionary, without splitting it up.
+     */
+    public static int wordCount(CharSequence text, int from, int to) {
+        int validWordCount = 0;
+        int start = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || text.charAt(i) == ' ') {
+                if (i > start && isWord(text, start, i)) {
+                    validWordCount += 1;
+                }
+                start = i + 1;
+            }
+        }
+        return validWordCount;
+    }
+
+    public static int wordCount(char[] text, int from, int to) {
         int validWordCount = 0;
-        for (String word: words) {
-            if (isWord(word)) {
-                validWordCount += 1;
+        int start = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || text[i] == ' ') {
+                if (i > start && isWord(text, start, i)) {
+                    validWordCount += 1;
+                }
+                start = i + 1;
             }
         }
         return validWordCount;
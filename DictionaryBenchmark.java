@@ -0,0 +1,66 @@
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Heap footprint and lookups/sec of the HashSet and DAFSA dictionary backends. Run from the repo root with a few
+ * hundred MB of heap so the footprint numbers aren't dominated by GC timing.
+ */
+public class DictionaryBenchmark {
+
+    static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> words = Dictionary.readWords("dict.txt");
+
+        // Read separately so the HashSet's footprint includes its own Strings
+        long base = usedHeap();
+        long start = System.nanoTime();
+        Lexicon hash = new HashLexicon(Dictionary.readWords("dict.txt"));
+        long hashBuild = System.nanoTime() - start;
+        long hashHeap = usedHeap() - base;
+
+        base = usedHeap();
+        start = System.nanoTime();
+        DafsaLexicon dafsa = DafsaLexicon.build(words);
+        long dafsaBuild = System.nanoTime() - start;
+        long dafsaHeap = usedHeap() - base;
+
+        System.out.printf("HashLexicon  %,d words, heap %,d KB, build %d ms%n",
+                hash.size(), hashHeap / 1024, hashBuild / 1_000_000);
+        System.out.printf("DafsaLexicon %,d words, %,d states, %,d edges, heap %,d KB, build %d ms%n",
+                dafsa.size(), dafsa.states(), dafsa.edges(), dafsaHeap / 1024, dafsaBuild / 1_000_000);
+
+        // Half real words, half random letters, the mix a cracker sees
+        Random r = new Random(7);
+        String[] queries = new String[200_000];
+        for (int i = 0; i < queries.length; i++) {
+            if (i % 2 == 0) {
+                queries[i] = words.get(r.nextInt(words.size())).toUpperCase();
+            } else {
+                char[] junk = new char[3 + r.nextInt(8)];
+                for (int j = 0; j < junk.length; j++) {
+                    junk[j] = (char) ('a' + r.nextInt(26));
+                }
+                queries[i] = new String(junk);
+            }
+        }
+        for (Lexicon lex : new Lexicon[] {hash, dafsa}) {
+            Bench.rate(lex.getClass().getSimpleName() + " isWord", queries.length, 5, 10, () -> {
+                int hits = 0;
+                for (String q : queries) {
+                    if (lex.isWord(q, 0, q.length())) {
+                        hits++;
+                    }
+                }
+                Bench.consume(hits);
+            });
+        }
+    }
+}
@@ -0,0 +1,25 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Build step that compiles dict.txt into the binary snapshot Dictionary loads at startup.
+ *
+ * Usage: java DictionaryCompiler [dict.txt] [dict.bin]
+ *
+ * The snapshot records dict.txt's size and modification time. If dict.txt changes later, Dictionary ignores the
+ * stale snapshot and builds from text again until this is re-run.
+ */
+public class DictionaryCompiler {
+
+    public static void main(String[] args) throws IOException {
+        Path text = Paths.get(args.length > 0 ? args[0] : "dict.txt");
+        Path snapshot = Paths.get(args.length > 1 ? args[1] : "dict.bin");
+        long start = System.nanoTime();
+        DafsaLexicon lex = DafsaLexicon.build(Dictionary.readWords(text.toString()));
+        lex.save(snapshot, Files.size(text), Files.getLastModifiedTime(text).toMillis());
+        System.out.printf("%s: %,d words, %,d states, %,d edges, %,d bytes in %d ms%n", snapshot, lex.size(),
+                lex.states(), lex.edges(), Files.size(snapshot), (System.nanoTime() - start) / 1_000_000);
+    }
+}
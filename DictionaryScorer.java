@@ -0,0 +1,16 @@
+/**
+ * Number of space separated dictionary words, the fitness the crackers originally used. Good at confirming a
+ * solution, useless for text without spaces.
+ */
+public class DictionaryScorer implements PlaintextScorer {
+
+    @Override
+    public double score(char[] text, int from, int to) {
+        return Dictionary.wordCount(text, from, to);
+    }
+
+    @Override
+    public double score(CharSequence text, int from, int to) {
+        return Dictionary.wordCount(text, from, to);
+    }
+}
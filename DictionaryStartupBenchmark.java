@@ -0,0 +1,49 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * Time from JVM start to the first answered Dictionary.isWord, which is what a short crack job pays before doing
+ * any work. Each measurement is a fresh JVM, since Dictionary only loads once per process. Run from the repo root
+ * after DictionaryCompiler has written dict.bin.
+ */
+public class DictionaryStartupBenchmark {
+
+    static final int RUNS = 5;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("child")) {
+            long start = System.nanoTime();
+            boolean hit = Dictionary.isWord("benchmark");
+            long elapsed = System.nanoTime() - start;
+            System.out.println(elapsed + " " + hit);
+            return;
+        }
+        run("text, HashSet", "-Ddictionary.backend=hash");
+        run("text, DAFSA build", "-Ddictionary.snapshot=none");
+        run("snapshot", "-Ddictionary.snapshot=dict.bin");
+    }
+
+    static void run(String label, String property) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String cp = System.getProperty("java.class.path");
+        long bestInit = Long.MAX_VALUE;
+        long bestWall = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            Process p = new ProcessBuilder(java, property, "-cp", cp, "DictionaryStartupBenchmark", "child")
+                    .redirectErrorStream(true).start();
+            String line;
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+                line = br.readLine();
+            }
+            p.waitFor();
+            long wall = System.nanoTime() - start;
+            bestInit = Math.min(bestInit, Long.parseLong(line.split(" ")[0]));
+            bestWall = Math.min(bestWall, wall);
+        }
+        System.out.printf("%-20s first isWord %6d ms, process wall %6d ms%n", label, bestInit / 1_000_000,
+                bestWall / 1_000_000);
+    }
+}
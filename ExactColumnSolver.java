@@ -0,0 +1,148 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Exact column order for a columnar transposition of up to MAX_COLUMNS columns.
+ *
+ * Reading the plaintext means walking every ciphertext column once, left to right, so the best order is the maximum
+ * weight Hamiltonian path through ColumnAdjacency's pair scores. That is solved with the Held-Karp bitmask DP:
+ * best[mask][e] is the best path visiting exactly the columns in mask and ending at e, extended one column at a
+ * time. O(2^k * k^2) time and 5 * 2^k * k bytes; 20 columns is about 100 MB.
+ *
+ * States that can't beat a greedy path even if every remaining column joined on its best incoming edge are dropped,
+ * which on real text removes most of the work without giving up the guarantee. The row wrap term is left out of the
+ * DP, since a path has no notion of its own first column, and is only used to rank the finished orders.
+ */
+public final class ExactColumnSolver {
+
+    public static final int MAX_COLUMNS = 20;
+
+    private static final float NONE = Float.NEGATIVE_INFINITY;
+
+    private final BigramModel model;
+
+    public ExactColumnSolver() {
+        this(Bigrams.model);
+    }
+
+    public ExactColumnSolver(BigramModel model) {
+        this.model = model;
+    }
+
+    /**
+     * The best column orders, one per final column, best first.
+     * @param cipher The ciphertext, a full grid read out column by column.
+     * @param k The number of columns, 2 to MAX_COLUMNS, must divide cipher.length.
+     * @param top How many orders to return at most.
+     * @return Orders as in ColumnAnnealer.solve, best path first: the first is the optimum, the rest are the best
+     *         paths ending elsewhere that also beat the greedy path. Each is scored by mean bigram log probability per
+     *         column boundary, counting the wrap from the last column back to the first, so the scores need not
+     *         decrease down the list.
+     */
+    public List<CrackResult<int[]>> solve(char[] cipher, int k, int top) {
+        if (k < 2 || k > MAX_COLUMNS) {
+            throw new IllegalArgumentException("Exact search supports 2 to " + MAX_COLUMNS + " columns, not " + k);
+        }
+        ColumnAdjacency adj = new ColumnAdjacency(cipher, k, model);
+        float[] w = new float[k * k];
+        float[] maxIn = new float[k];
+        Arrays.fill(maxIn, NONE);
+        for (int a = 0; a < k; a++) {
+            for (int b = 0; b < k; b++) {
+                if (a != b) {
+                    w[a * k + b] = adj.pair(a, b);
+                    maxIn[b] = Math.max(maxIn[b], w[a * k + b]);
+                }
+            }
+        }
+        float incumbent = greedy(w, k);
+
+        int full = (1 << k) - 1;
+        float[] best = new float[(full + 1) * k];
+        byte[] from = new byte[(full + 1) * k];
+        Arrays.fill(best, NONE);
+        for (int e = 0; e < k; e++) {
+            best[(1 << e) * k + e] = 0f;
+        }
+        for (int mask = 1; mask < full; mask++) {
+            float remaining = 0f;
+            for (int v = 0; v < k; v++) {
+                if ((mask & (1 << v)) == 0) {
+                    remaining += maxIn[v];
+                }
+            }
+            int base = mask * k;
+            for (int e = 0; e < k; e++) {
+                float cur = best[base + e];
+                // Slack for float rounding, so the optimum itself is never pruned
+                if (cur == NONE || cur + remaining < incumbent - 1e-3f) {
+                    continue;
+                }
+                int row = e * k;
+                for (int v = 0; v < k; v++) {
+                    if ((mask & (1 << v)) != 0) {
+                        continue;
+                    }
+                    int next = (mask | (1 << v)) * k + v;
+                    float s = cur + w[row + v];
+                    if (s > best[next]) {
+                        best[next] = s;
+                        from[next] = (byte) e;
+                    }
+                }
+            }
+        }
+
+        // Best path first; the reported score adds the wrap pair, which the path doesn't optimize, so don't sort on it
+        Integer[] ends = new Integer[k];
+        for (int e = 0; e < k; e++) {
+            ends[e] = e;
+        }
+        Arrays.sort(ends, (a, b) -> Float.compare(best[full * k + b], best[full * k + a]));
+        List<CrackResult<int[]>> results = new ArrayList<>();
+        char[] plain = new char[cipher.length];
+        for (int e : ends) {
+            if (best[full * k + e] == NONE || results.size() == top) {
+                continue;
+            }
+            int[] order = new int[k];
+            int mask = full;
+            int at = e;
+            for (int p = k - 1; p >= 0; p--) {
+                order[p] = at;
+                int prev = from[mask * k + at];
+                mask &= ~(1 << at);
+                at = prev;
+            }
+            adj.decrypt(cipher, order, plain);
+            results.add(new CrackResult<>(order, new String(plain), adj.score(order) / k));
+        }
+        return results;
+    }
+
+    /** Score of the best nearest-neighbour path over all starting columns, a lower bound on the optimum. */
+    private static float greedy(float[] w, int k) {
+        float best = NONE;
+        boolean[] used = new boolean[k];
+        for (int start = 0; start < k; start++) {
+            Arrays.fill(used, false);
+            used[start] = true;
+            int at = start;
+            float total = 0f;
+            for (int step = 1; step < k; step++) {
+                int pick = -1;
+                for (int v = 0; v < k; v++) {
+                    if (!used[v] && (pick < 0 || w[at * k + v] > w[at * k + pick])) {
+                        pick = v;
+                    }
+                }
+                used[pick] = true;
+                total += w[at * k + pick];
+                at = pick;
+            }
+            best = Math.max(best, total);
+        }
+        return best;
+    }
+}
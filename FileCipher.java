@@ -0,0 +1,245 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Encrypts and decrypts files through memory maps, with the cipher's ASCII byte mode (see Cipher.encrypt(ByteBuffer,
+ * ByteBuffer)). The output is byte for byte what ciphering the whole file in one call gives.
+ *
+ * Files are split into chunks of chunkSize bytes, each mapped on its own, so files above 2 GB work too:
+ * - CaesarCipher and ScrambleCipher don't care where a byte is, so chunks are ciphered in parallel in place.
+ * - PolyCipher chunks are also ciphered in parallel, each starting at its key position. Decrypting, that is the
+ *   chunk's offset mod the key length. Encrypting drops whitespace, so a first parallel pass counts what each chunk
+ *   keeps, which gives each chunk both its key position and its offset in the output.
+ * - ColTransCipher needs the whole message at once, so it runs in one call over a single map, up to 2 GB.
+ * Any other cipher has no byte mode and isn't supported.
+ *
+ * Usage: FileCipher encrypt|decrypt caesar|scramble|poly|coltrans key in out [--alphabet lower,upper,...]
+ *        [--threads n] [--chunk bytes] [--keystore file --id n]
+ *
+ * The key is the shift for caesar, the permuted alphabet for scramble, and the key text for poly and coltrans. The
+ * alphabet defaults to lower,upper,numbers,punctuation. poly reads its square from matrix.csv in the working
+ * directory, or from a BetaKeystore.
+ */
+public final class FileCipher {
+
+    /** Default bytes per chunk: large enough to amortize a map, small enough to spread a file over the cores. */
+    static final int CHUNK_SIZE = 1 << 24;
+
+    private final Cipher cipher;
+    private final int threads;
+    private final int chunkSize;
+
+    public FileCipher(Cipher cipher) {
+        this(cipher, Runtime.getRuntime().availableProcessors(), CHUNK_SIZE);
+    }
+
+    /**
+     * @param cipher A CaesarCipher, ScrambleCipher, PolyCipher or ColTransCipher over an ASCII alphabet.
+     * @param threads Chunks ciphered at once; 1 runs everything on the calling thread.
+     * @param chunkSize Bytes per chunk.
+     */
+    public FileCipher(Cipher cipher, int threads, int chunkSize) {
+        if (!(cipher instanceof CaesarCipher || cipher instanceof ScrambleCipher || cipher instanceof PolyCipher
+                || cipher instanceof ColTransCipher)) {
+            throw new IllegalArgumentException(cipher.getClass().getSimpleName() + " has no byte mode");
+        }
+        if (threads < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("threads and chunkSize must be positive");
+        }
+        this.cipher = cipher;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Encrypt in into out, replacing out.
+     * @return The size of out.
+     */
+    public long encrypt(Path in, Path out) throws IOException {
+        return run(in, out, true);
+    }
+
+    public long decrypt(Path in, Path out) throws IOException {
+        return run(in, out, false);
+    }
+
+    private long run(Path inPath, Path outPath, boolean encrypt) throws IOException {
+        try (FileChannel in = FileChannel.open(inPath, StandardOpenOption.READ);
+                RandomAccessFile file = new RandomAccessFile(outPath.toFile(), "rw")) {
+            FileChannel out = file.getChannel();
+            long size = in.size();
+            if (cipher instanceof ColTransCipher) {
+                return whole(in, file, size, encrypt);
+            }
+            int chunks = (int) ((size + chunkSize - 1) / chunkSize);
+            long[] outOffset = new long[chunks + 1];
+            long[] keyPosition = new long[chunks];
+            if (cipher instanceof PolyCipher && encrypt) {
+                // Whitespace is dropped, so each chunk's place in the output depends on what came before it
+                long[] kept = new long[chunks];
+                parallel(chunks, i -> kept[i] = kept(map(in, FileChannel.MapMode.READ_ONLY, i, size)));
+                for (int i = 0; i < chunks; i++) {
+                    keyPosition[i] = outOffset[i];
+                    outOffset[i + 1] = outOffset[i] + kept[i];
+                }
+            } else {
+                for (int i = 0; i < chunks; i++) {
+                    keyPosition[i] = (long) i * chunkSize;
+                    outOffset[i + 1] = Math.min(size, (long) (i + 1) * chunkSize);
+                }
+            }
+            file.setLength(outOffset[chunks]);
+            parallel(chunks, i -> {
+                MappedByteBuffer src = map(in, FileChannel.MapMode.READ_ONLY, i, size);
+                MappedByteBuffer dst = out.map(FileChannel.MapMode.READ_WRITE, outOffset[i],
+                        outOffset[i + 1] - outOffset[i]);
+                Cipher.transform(transform(encrypt, keyPosition[i]), src, dst);
+            });
+            return outOffset[chunks];
+        }
+    }
+
+    private ByteTransform transform(boolean encrypt, long keyPosition) {
+        ByteTransform t = cipher instanceof PolyCipher poly
+                ? poly.byteTransform(encrypt, keyPosition)
+                : encrypt ? cipher.byteEncryptor() : cipher.byteDecryptor();
+        if (t == null) {
+            throw new IllegalStateException("The cipher has no byte mode: its alphabet or square is not ASCII");
+        }
+        return t;
+    }
+
+    /** The whole file in one call, for ciphers that can't work a chunk at a time. */
+    private long whole(FileChannel in, RandomAccessFile file, long size, boolean encrypt) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(cipher.getClass().getSimpleName() + " can't cipher a file over 2 GB");
+        }
+        int room = cipher.outputSize((int) size);
+        file.setLength(room);
+        MappedByteBuffer src = in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        MappedByteBuffer dst = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, room);
+        int n = encrypt ? cipher.encrypt(src, dst) : cipher.decrypt(src, dst);
+        dst.force();
+        file.setLength(n);
+        return n;
+    }
+
+    private MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, int chunk, long size)
+            throws IOException {
+        long from = (long) chunk * chunkSize;
+        return channel.map(mode, from, Math.min(chunkSize, size - from));
+    }
+
+    /** Bytes of a PolyCipher plaintext chunk that encryption keeps. */
+    private static long kept(MappedByteBuffer chunk) {
+        byte[] buf = new byte[Cipher.CHUNK_SIZE];
+        long n = 0;
+        while (chunk.hasRemaining()) {
+            int k = Math.min(buf.length, chunk.remaining());
+            chunk.get(buf, 0, k);
+            for (int i = 0; i < k; i++) {
+                byte b = buf[i];
+                if (b > ' ' || !PolyCipher.isWhitespace((char) (b & 0xFF))) {
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    private interface ChunkTask {
+        void run(int chunk) throws IOException;
+    }
+
+    private void parallel(int chunks, ChunkTask task) throws IOException {
+        if (threads == 1 || chunks <= 1) {
+            for (int i = 0; i < chunks; i++) {
+                task.run(i);
+            }
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            int chunk = i;
+            tasks.add(ForkJoinTask.adapt(() -> {
+                try {
+                    task.run(chunk);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////
+    /// Main                                                          //
+    ////////////////////////////////////////////////////////////////////
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 5 || !(args[0].equals("encrypt") || args[0].equals("decrypt"))) {
+            System.out.println("Usage: FileCipher encrypt|decrypt caesar|scramble|poly|coltrans key in out"
+                    + " [--alphabet lower,upper,...] [--threads n] [--chunk bytes] [--keystore file --id n]");
+            return;
+        }
+        String[] names = {"lower", "upper", "numbers", "punctuation"};
+        int threads = Runtime.getRuntime().availableProcessors();
+        int chunk = CHUNK_SIZE;
+        String keystore = null;
+        int id = 0;
+        for (int i = 5; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--alphabet" -> names = args[i + 1].split(",");
+                case "--threads" -> threads = Integer.parseInt(args[i + 1]);
+                case "--chunk" -> chunk = Integer.parseInt(args[i + 1]);
+                case "--keystore" -> keystore = args[i + 1];
+                case "--id" -> id = Integer.parseInt(args[i + 1]);
+                default -> throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+
+        String key = args[2];
+        Cipher cipher = switch (args[1]) {
+            case "caesar" -> new CaesarCipher(Integer.parseInt(key), names);
+            case "scramble" -> new ScrambleCipher(names, key.toCharArray());
+            case "coltrans" -> new ColTransCipher(key, names, true, false);
+            case "poly" -> {
+                PolyCipher poly = new PolyCipher(key, names);
+                if (keystore != null) {
+                    poly.getBeta(BetaKeystore.open(Paths.get(keystore)), id);
+                } else {
+                    poly.getBeta();
+                }
+                yield poly;
+            }
+            default -> throw new IllegalArgumentException("unknown cipher " + args[1]);
+        };
+
+        FileCipher files = new FileCipher(cipher, threads, chunk);
+        Path in = Paths.get(args[3]);
+        Path out = Paths.get(args[4]);
+        long start = System.nanoTime();
+        long n = args[0].equals("encrypt") ? files.encrypt(in, out) : files.decrypt(in, out);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s: %,d bytes in %.3f s, %.2f GB/s%n", out, n, seconds,
+                Files.size(in) / seconds / 1e9);
+    }
+}
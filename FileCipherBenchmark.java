@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * FileCipher throughput on a generated text file, with one thread and with every core. Before timing, each cipher's
+ * chunked, parallel output is checked against encrypting the whole file in one call, and decrypting it is checked to
+ * give the plaintext back (less the whitespace PolyCipher drops). The check uses small chunks so many chunk boundaries
+ * fall inside the key and the whitespace. Run from the repo root so PolyCipher can find matrix.csv.
+ *
+ * Usage: FileCipherBenchmark [MB, default 256]
+ */
+public class FileCipherBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int mb = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        String[] names = {"lower", "upper", "numbers", "punctuation"};
+        ArrayList<Character> alpha = Cipher.getAlphabet(names);
+        KeyFactory keys = new KeyFactory(24);
+
+        Map<String, Cipher> ciphers = new LinkedHashMap<>();
+        ciphers.put("CaesarCipher", new CaesarCipher(11, names));
+        ciphers.put("ScrambleCipher", new ScrambleCipher(names, keys.permutation(alpha)));
+        PolyCipher poly = new PolyCipher(
+                "I write these words in steel, for anything not set in metal cannot be trusted", names);
+        poly.getBeta();
+        ciphers.put("PolyCipher", poly);
+
+        Path dir = Files.createTempDirectory("filecipher");
+        Path plain = dir.resolve("plain.txt");
+        Path sample = dir.resolve("sample.txt");
+        Path out = dir.resolve("out.bin");
+        Path back = dir.resolve("back.txt");
+        try {
+            write(sample, 4 << 20, alpha);
+            for (Map.Entry<String, Cipher> e : ciphers.entrySet()) {
+                check(e.getKey(), e.getValue(), sample, out, back);
+            }
+
+            write(plain, mb << 20, alpha);
+            int cores = Runtime.getRuntime().availableProcessors();
+            System.out.printf("%d MB, %d cores%n", mb, cores);
+            for (Map.Entry<String, Cipher> e : ciphers.entrySet()) {
+                for (int threads : cores == 1 ? new int[] {1} : new int[] {1, cores}) {
+                    FileCipher files = new FileCipher(e.getValue(), threads, FileCipher.CHUNK_SIZE);
+                    files.encrypt(plain, out); // warm up
+                    double best = Double.MAX_VALUE;
+                    for (int round = 0; round < 3; round++) {
+                        long start = System.nanoTime();
+                        files.encrypt(plain, out);
+                        best = Math.min(best, (System.nanoTime() - start) / 1e9);
+                    }
+                    System.out.printf("%-16s %2d thread(s) %8.2f GB/s%n", e.getKey(), threads,
+                            Files.size(plain) / best / 1e9);
+                }
+            }
+        } finally {
+            for (Path p : new Path[] {plain, sample, out, back}) {
+                Files.deleteIfExists(p);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    /** Random alphabet text with a space every 7 chars and a newline every 80. */
+    static void write(Path path, int size, ArrayList<Character> alpha) throws IOException {
+        byte[] text = KeyFactory.runningKey(size, alpha, Rand.seeded(size)).getBytes(StandardCharsets.US_ASCII);
+        for (int i = 6; i < size; i += 7) {
+            text[i] = ' ';
+        }
+        for (int i = 79; i < size; i += 80) {
+            text[i] = '\n';
+        }
+        Files.write(path, text);
+    }
+
+    static void check(String name, Cipher cipher, Path plain, Path out, Path back) throws IOException {
+        byte[] text = Files.readAllBytes(plain);
+        byte[] expected = cipher.encrypt(text);
+        FileCipher files = new FileCipher(cipher, 4, 100_003);
+        files.encrypt(plain, out);
+        if (!Arrays.equals(Files.readAllBytes(out), expected)) {
+            throw new IllegalStateException(name + ": chunked encryption differs from encrypt(byte[])");
+        }
+        files.decrypt(out, back);
+        String want = new String(text, StandardCharsets.US_ASCII);
+        if (cipher instanceof PolyCipher) {
+            want = PolyCipher.clean(want);
+        }
+        if (!new String(Files.readAllBytes(back), StandardCharsets.US_ASCII).equals(want)) {
+            throw new IllegalStateException(name + ": decrypting the file doesn't give the plaintext back");
+        }
+        System.out.println(name + ": chunked output matches");
+    }
+}
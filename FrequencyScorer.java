@@ -0,0 +1,72 @@
+/**
+ * Negated chi-squared distance between the text's letter counts and LetterFrequency. Case is ignored and
+ * everything but a-z is skipped. Cheap, and works with or without spaces, but can't tell anagrams apart.
+ */
+public class FrequencyScorer implements PlaintextScorer {
+
+    private static final ThreadLocal<int[]> COUNTS = ThreadLocal.withInitial(() -> new int[26]);
+
+    private final double[] expected = new double[26];
+
+    public FrequencyScorer() {
+        double total = 0.0;
+        for (char c = 'a'; c <= 'z'; c++) {
+            total += LetterFrequency.frequencies.getOrDefault(c, 0.0);
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            expected[c - 'a'] = LetterFrequency.frequencies.getOrDefault(c, 0.0) / total;
+        }
+    }
+
+    static int letter(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a';
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        }
+        return -1;
+    }
+
+    @Override
+    public double score(char[] text, int from, int to) {
+        int[] counts = COUNTS.get();
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            int l = letter(text[i]);
+            if (l >= 0) {
+                counts[l]++;
+                n++;
+            }
+        }
+        return finish(counts, n);
+    }
+
+    @Override
+    public double score(CharSequence text, int from, int to) {
+        int[] counts = COUNTS.get();
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            int l = letter(text.charAt(i));
+            if (l >= 0) {
+                counts[l]++;
+                n++;
+            }
+        }
+        return finish(counts, n);
+    }
+
+    /** Turns the counts into the score and clears them for the next call. */
+    private double finish(int[] counts, int n) {
+        double chi = 0.0;
+        for (int i = 0; i < 26; i++) {
+            double e = expected[i] * n;
+            if (e > 0) {
+                double d = counts[i] - e;
+                chi += d * d / e;
+            }
+            counts[i] = 0;
+        }
+        return -chi;
+    }
+}
@@ -0,0 +1,56 @@
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The original Dictionary backend, a HashSet of lowercase words. Region lookups have to build a String, and the
+ * prefix set is only built the first time hasPrefix is called.
+ */
+public final class HashLexicon implements Lexicon {
+
+    private final Set<String> words;
+    private volatile Set<String> prefixes;
+
+    public HashLexicon(List<String> words) {
+        this.words = new HashSet<>(words);
+    }
+
+    @Override
+    public boolean isWord(CharSequence s, int from, int to) {
+        return words.contains(s.subSequence(from, to).toString().toLowerCase());
+    }
+
+    @Override
+    public boolean isWord(char[] s, int from, int to) {
+        return words.contains(new String(s, from, to - from).toLowerCase());
+    }
+
+    @Override
+    public boolean hasPrefix(CharSequence s, int from, int to) {
+        return prefixes().contains(s.subSequence(from, to).toString().toLowerCase());
+    }
+
+    @Override
+    public boolean hasPrefix(char[] s, int from, int to) {
+        return prefixes().contains(new String(s, from, to - from).toLowerCase());
+    }
+
+    private Set<String> prefixes() {
+        Set<String> p = prefixes;
+        if (p == null) {
+            p = new HashSet<>();
+            for (String w : words) {
+                for (int i = 0; i <= w.length(); i++) {
+                    p.add(w.substring(0, i));
+                }
+            }
+            prefixes = p;
+        }
+        return p;
+    }
+
+    @Override
+    public int size() {
+        return words.size();
+    }
+}
@@ -0,0 +1,58 @@
+import java.util.Arrays;
+
+/**
+ * A beta matrix held as a char[][], with its inverse precomputed as inverse[row][cipherChar] = plaintext index.
+ * The rows are referenced, not copied, so the source array must not change while this is in use.
+ */
+public final class HeapBetaSquare implements BetaSquare {
+
+    private final char[][] square;
+    private final int[][] inverse;
+    private final AlphabetCodec alphabet;
+
+    public HeapBetaSquare(char[][] square, AlphabetCodec alphabet) {
+        this.square = square;
+        this.alphabet = alphabet;
+        this.inverse = new int[square.length][];
+        for (int row = 0; row < square.length; row++) {
+            char[] cipherRow = square[row];
+            int width = 0;
+            for (char c : cipherRow) {
+                width = Math.max(width, c + 1);
+            }
+            int[] inv = new int[width];
+            Arrays.fill(inv, -1);
+            // Walk backwards so the first occurrence wins, like indexOf
+            for (int col = cipherRow.length - 1; col >= 0; col--) {
+                inv[cipherRow[col]] = col;
+            }
+            inverse[row] = inv;
+        }
+    }
+
+    @Override
+    public int size() {
+        return square.length;
+    }
+
+    @Override
+    public AlphabetCodec alphabet() {
+        return alphabet;
+    }
+
+    @Override
+    public char cipher(int row, int plainIndex) {
+        return square[row][plainIndex];
+    }
+
+    @Override
+    public int plain(int row, char cipherChar) {
+        int[] inv = inverse[row];
+        return cipherChar < inv.length ? inv[cipherChar] : -1;
+    }
+
+    @Override
+    public char[] row(int row) {
+        return square[row].clone();
+    }
+}
@@ -0,0 +1,189 @@
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Makes keys for every cipher in the project, one at a time or in bulk:
+ * - permutations of an alphabet for ScrambleCipher, by Fisher-Yates, so each of the n! orders is equally likely;
+ * - beta squares for PolyCipher and PolyCipher2: the shifted-alphabet square generateSquare() builds, with its rows and
+ *   its columns each put through a random permutation, which is the Latin square scrambleSquare() aims for in one
+ *   O(n^2) pass;
+ * - column keys for ColTransCipher;
+ * - running keys drawn from an alphabet with one bulk Rand.fill().
+ *
+ * The bulk methods build their keys in parallel on the common pool. A default factory draws from Rand.local() on
+ * whichever thread builds a key. A seeded factory splits one stream per key, in order, before the parallel part
+ * starts, so the same seed gives the same keys in the same order regardless of scheduling. A seeded factory is not
+ * itself thread-safe; share its bulk output, not the factory.
+ */
+public final class KeyFactory {
+
+    private final Rand seeded; // null means Rand.local() of the building thread
+
+    /** Secure keys. */
+    public KeyFactory() {
+        this.seeded = null;
+    }
+
+    /** Reproducible, non-secret keys, e.g. for benchmarks. */
+    public KeyFactory(long seed) {
+        this.seeded = Rand.seeded(seed);
+    }
+
+    ////////////////////////////////////////////////////////////////////
+    /// Single keys                                                   //
+    ////////////////////////////////////////////////////////////////////
+
+    /** A uniformly random ordering of 0 .. n-1. */
+    public int[] permutation(int n) {
+        return permutation(n, rand());
+    }
+
+    /** The alphabet in a uniformly random order, e.g. a ScrambleCipher key. */
+    public char[] permutation(List<Character> alphabet) {
+        return permutation(alphabet, rand());
+    }
+
+    /** A random Latin square over the alphabet, rows and columns scrambled, for PolyCipher.setSquare(). */
+    public char[][] square(List<Character> alphabet) {
+        return square(alphabet, rand());
+    }
+
+    /** A ColTransCipher key of k distinct columns, as the chars its int[] constructor takes. */
+    public int[] columnKey(int k) {
+        return columnKey(k, rand());
+    }
+
+    /** A running key of length chars from the alphabet. */
+    public String runningKey(int length, List<Character> alphabet) {
+        return runningKey(length, alphabet, rand());
+    }
+
+    ////////////////////////////////////////////////////////////////////
+    /// Bulk                                                          //
+    ////////////////////////////////////////////////////////////////////
+
+    public List<char[]> permutations(int count, List<Character> alphabet) {
+        return bulk(count, r -> permutation(alphabet, r));
+    }
+
+    public List<char[][]> squares(int count, List<Character> alphabet) {
+        return bulk(count, r -> square(alphabet, r));
+    }
+
+    public List<int[]> columnKeys(int count, int k) {
+        return bulk(count, r -> columnKey(k, r));
+    }
+
+    public List<String> runningKeys(int count, int length, List<Character> alphabet) {
+        return bulk(count, r -> runningKey(length, alphabet, r));
+    }
+
+    private <K> List<K> bulk(int count, Function<Rand, K> make) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count must not be negative");
+        }
+        if (seeded == null) {
+            return IntStream.range(0, count).parallel().mapToObj(i -> make.apply(Rand.local()))
+                    .collect(Collectors.toList());
+        }
+        Rand[] streams = new Rand[count];
+        for (int i = 0; i < count; i++) {
+            streams[i] = seeded.split();
+        }
+        return IntStream.range(0, count).parallel().mapToObj(i -> make.apply(streams[i]))
+                .collect(Collectors.toList());
+    }
+
+    private Rand rand() {
+        return seeded != null ? seeded : Rand.local();
+    }
+
+    ////////////////////////////////////////////////////////////////////
+    /// Generators                                                    //
+    ////////////////////////////////////////////////////////////////////
+
+    static int[] permutation(int n, Rand rand) {
+        int[] p = new int[n];
+        for (int i = 0; i < n; i++) {
+            p[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            int t = p[i];
+            p[i] = p[j];
+            p[j] = t;
+        }
+        return p;
+    }
+
+    static char[] permutation(List<Character> alphabet, Rand rand) {
+        int[] p = permutation(alphabet.size(), rand);
+        char[] out = new char[p.length];
+        for (int i = 0; i < p.length; i++) {
+            out[i] = alphabet.get(p[i]);
+        }
+        return out;
+    }
+
+    /** square[r][c] = alphabet[(rows[r] + cols[c]) mod n]. */
+    static char[][] square(List<Character> alphabet, Rand rand) {
+        int n = alphabet.size();
+        char[] alpha = new char[n];
+        for (int i = 0; i < n; i++) {
+            alpha[i] = alphabet.get(i);
+        }
+        int[] rows = permutation(n, rand);
+        int[] cols = permutation(n, rand);
+        char[][] square = new char[n][n];
+        for (int r = 0; r < n; r++) {
+            char[] row = square[r];
+            for (int c = 0; c < n; c++) {
+                int s = rows[r] + cols[c];
+                row[c] = alpha[s >= n ? s - n : s];
+            }
+        }
+        return square;
+    }
+
+    /**
+     * Permute the rows and then the columns of an existing square in place, each by one Fisher-Yates permutation.
+     * Every row of the square must have the same length.
+     */
+    static void scramble(char[][] square, Rand rand) {
+        int[] rows = permutation(square.length, rand);
+        char[][] byRow = square.clone();
+        for (int r = 0; r < square.length; r++) {
+            square[r] = byRow[rows[r]];
+        }
+        int width = square.length == 0 ? 0 : square[0].length;
+        int[] cols = permutation(width, rand);
+        for (int r = 0; r < square.length; r++) {
+            char[] old = square[r];
+            char[] row = new char[width];
+            for (int c = 0; c < width; c++) {
+                row[c] = old[cols[c]];
+            }
+            square[r] = row;
+        }
+    }
+
+    static int[] columnKey(int k, Rand rand) {
+        int[] p = permutation(k, rand);
+        for (int i = 0; i < k; i++) {
+            p[i] += 'a';
+        }
+        return p;
+    }
+
+    static String runningKey(int length, List<Character> alphabet, Rand rand) {
+        int[] idx = new int[length];
+        rand.fill(idx, alphabet.size());
+        char[] k = new char[length];
+        for (int i = 0; i < length; i++) {
+            k[i] = alphabet.get(idx[i]);
+        }
+        return new String(k);
+    }
+}
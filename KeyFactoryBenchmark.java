@@ -0,0 +1,106 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keys per second from KeyFactory, one at a time and in bulk, against the loops it replaced, over PolyCipher's
+ * 71-char alphabet: the |alphabet|^2 Math.random swaps Cipher.scramble did, the 20 * n row and column swaps of
+ * scrambleSquare, and a running key built one Rand.randInt at a time.
+ *
+ * Usage: KeyFactoryBenchmark [keys per round, default 2000] [running key length, default 4096]
+ */
+public class KeyFactoryBenchmark {
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int length = args.length > 1 ? Integer.parseInt(args[1]) : 4096;
+        ArrayList<Character> alpha = Cipher.getAlphabet(new String[] {"lower", "upper", "numbers", "punctuation"});
+        KeyFactory keys = new KeyFactory();
+        KeyFactory seeded = new KeyFactory(7);
+        System.out.println(Runtime.getRuntime().availableProcessors() + " processors, " + alpha.size() + " chars");
+
+        Bench.rate("permutation, n^2 swaps", count, 2, 5, () -> {
+            for (int i = 0; i < count; i++) {
+                Bench.consume(swapScramble(alpha));
+            }
+        });
+        Bench.rate("permutation, KeyFactory", count, 2, 5, () -> {
+            for (int i = 0; i < count; i++) {
+                Bench.consume(keys.permutation(alpha));
+            }
+        });
+        Bench.rate("permutation, KeyFactory bulk", count, 2, 5, () -> Bench.consume(keys.permutations(count, alpha)));
+        Bench.rate("permutation, seeded bulk", count, 2, 5, () -> Bench.consume(seeded.permutations(count, alpha)));
+
+        int squares = Math.max(1, count / 10);
+        Bench.rate("square, generate + 20n swaps", squares, 2, 5, () -> {
+            for (int i = 0; i < squares; i++) {
+                Bench.consume(swapSquare(alpha));
+            }
+        });
+        Bench.rate("square, KeyFactory", squares, 2, 5, () -> {
+            for (int i = 0; i < squares; i++) {
+                Bench.consume(keys.square(alpha));
+            }
+        });
+        Bench.rate("square, KeyFactory bulk", squares, 2, 5, () -> Bench.consume(keys.squares(squares, alpha)));
+
+        int running = Math.max(1, count / 10);
+        Bench.rate("running key, char by char", running, 2, 5, () -> {
+            for (int i = 0; i < running; i++) {
+                StringBuilder k = new StringBuilder();
+                for (int j = 0; j < length; j++) {
+                    k.append(alpha.get(Rand.randInt(alpha.size())));
+                }
+                Bench.consume(k.toString());
+            }
+        });
+        Bench.rate("running key, KeyFactory", running, 2, 5, () -> {
+            for (int i = 0; i < running; i++) {
+                Bench.consume(keys.runningKey(length, alpha));
+            }
+        });
+        Bench.rate("running key, KeyFactory bulk", running, 2, 5,
+                () -> Bench.consume(keys.runningKeys(running, length, alpha)));
+    }
+
+    /** What Cipher.scramble did before KeyFactory. */
+    static char[] swapScramble(List<Character> alphabet) {
+        char[] alpha = Cipher.toCharArray(alphabet);
+        for (int i = 0; i < alpha.length * alpha.length; i++) {
+            int a = (int) (Math.random() * alpha.length);
+            int b = (int) (Math.random() * alpha.length);
+            char c = alpha[a];
+            alpha[a] = alpha[b];
+            alpha[b] = c;
+        }
+        return alpha;
+    }
+
+    /** What generateSquare() followed by scrambleSquare() did before KeyFactory. */
+    static char[][] swapSquare(List<Character> alphabet) {
+        int n = alphabet.size();
+        char[][] square = new char[n][n];
+        for (int r = 0; r < n; r++) {
+            for (int c = 0; c < n; c++) {
+                square[r][c] = alphabet.get((r + c) % n);
+            }
+        }
+        for (int i = 0; i < n * 10; i++) {
+            int a = Rand.randInt(n);
+            int b = Rand.randInt(n);
+            char[] swap = square[a];
+            square[a] = square[b];
+            square[b] = swap;
+        }
+        for (int i = 0; i < n * 10; i++) {
+            int a = Rand.randInt(n);
+            int b = Rand.randInt(n);
+            for (char[] row : square) {
+                char c = row[a];
+                row[a] = row[b];
+                row[b] = c;
+            }
+        }
+        return square;
+    }
+}
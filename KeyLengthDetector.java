@@ -0,0 +1,194 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Ranks candidate key lengths for a columnar transposition ciphertext.
+ *
+ * With the right width the ciphertext splits into columns that each have a true right-hand neighbour, and reading a
+ * column beside its neighbour row by row gives English letter pairs all the way down. For every candidate width the
+ * detector finds each column's best partner and measures how far it stands above two unrelated columns of this
+ * text's letters, in standard deviations, less the margin the best of that many chance pairings would reach anyway.
+ * The mean over the columns is the candidate's score; confidences are a softmax over the scores.
+ *
+ * Padded ciphertexts (ColTransCipher's default) fill the grid, so only widths dividing the length are possible and
+ * each column starts at a known offset. Without padding the last row is short: with n letters and width k, n % k
+ * columns hold one extra letter, and which ones depends on the key. Column j then starts anywhere from
+ * j * (n / k) plus the number of long columns that could come before it, and every gap those starts allow between
+ * two columns is tried. Only the n / k rows every column has are compared.
+ *
+ * The letters are coded once into an int[] and every width is scored from it in parallel on the common pool.
+ */
+public final class KeyLengthDetector {
+
+    /** A key length, its raw score and its share of the confidence. */
+    public static final class Candidate {
+        private final int length;
+        private final double score;
+        private final double confidence;
+
+        Candidate(int length, double score, double confidence) {
+            this.length = length;
+            this.score = score;
+            this.confidence = confidence;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public double score() {
+            return score;
+        }
+
+        /** Between 0 and 1; the confidences of all candidates from one detect() call add up to 1. */
+        public double confidence() {
+            return confidence;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d (%.1f%%)", length, 100 * confidence);
+        }
+    }
+
+    /** Fewest full rows a width needs before its column pairings mean anything. */
+    static final int MIN_ROWS = 4;
+
+    private final BigramModel model;
+    private final int maxLength;
+
+    public KeyLengthDetector(int maxLength) {
+        this(Bigrams.model, maxLength);
+    }
+
+    public KeyLengthDetector(BigramModel model, int maxLength) {
+        if (maxLength < 2) {
+            throw new IllegalArgumentException("maxLength must be at least 2");
+        }
+        this.model = model;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Rank every plausible key length.
+     * @param ciphertext The ciphertext.
+     * @param padded Whether the grid was padded out to full rows.
+     * @return Candidates, most likely first. Empty if the text is too short for any width.
+     */
+    public List<Candidate> detect(String ciphertext, boolean padded) {
+        int n = ciphertext.length();
+        int[] codes = new int[n];
+        BigramModel.encode(ciphertext, 0, n, codes);
+        double[] nullPair = chancePairing(codes);
+        int max = Math.min(maxLength, n / MIN_ROWS);
+
+        List<double[]> scored = IntStream.rangeClosed(2, max).parallel()
+                .filter(k -> !padded || n % k == 0)
+                .mapToObj(k -> new double[] {k, score(codes, k, padded, nullPair[0], nullPair[1])})
+                .collect(Collectors.toList());
+
+        double top = Double.NEGATIVE_INFINITY;
+        for (double[] s : scored) {
+            top = Math.max(top, s[1]);
+        }
+        double total = 0;
+        for (double[] s : scored) {
+            total += Math.exp(s[1] - top);
+        }
+        List<Candidate> ranked = new ArrayList<>(scored.size());
+        for (double[] s : scored) {
+            ranked.add(new Candidate((int) s[0], s[1], Math.exp(s[1] - top) / total));
+        }
+        ranked.sort(Comparator.comparingDouble(Candidate::score).reversed()
+                .thenComparingInt(Candidate::length));
+        return ranked;
+    }
+
+    /**
+     * Mean and standard deviation of the log probability of a pair of this text's letters drawn independently,
+     * which is what lining up two unrelated columns amounts to.
+     */
+    private double[] chancePairing(int[] codes) {
+        double[] p = new double[BigramModel.A];
+        int letters = 0;
+        for (int c : codes) {
+            if (c >= 0) {
+                p[c]++;
+                letters++;
+            }
+        }
+        double mean = 0;
+        double sq = 0;
+        for (int x = 0; x < BigramModel.A; x++) {
+            for (int y = 0; y < BigramModel.A; y++) {
+                double w = p[x] * p[y] / Math.max(1.0, (double) letters * letters);
+                double lp = model.logProb(x, y);
+                mean += w * lp;
+                sq += w * lp * lp;
+            }
+        }
+        return new double[] {mean, Math.sqrt(Math.max(1e-12, sq - mean * mean))};
+    }
+
+    /**
+     * Mean over the columns of (best partner z-score - expected best of that many chance pairings).
+     *
+     * A pairing only depends on how far apart the two columns start: if column a really starts m letters later than
+     * the earliest it could, reading both from the earliest start with the right gap still lines up the same rows,
+     * just with m letters of the previous column in front. So each pair of columns is tried at every possible gap
+     * rather than every combination of starts.
+     */
+    double score(int[] codes, int k, boolean padded, double chanceMean, double chanceSd) {
+        int n = codes.length;
+        int h = n / k;
+        int longCols = padded ? 0 : n % k;
+        // Column j starts at j * h + m, where m is how many long columns precede it
+        int[] lo = new int[k];
+        int[] hi = new int[k];
+        for (int j = 0; j < k; j++) {
+            lo[j] = j * h + Math.max(0, j - (k - longCols));
+            hi[j] = j * h + Math.min(j, longCols);
+        }
+        double sd = chanceSd / Math.sqrt(h);
+
+        double total = 0;
+        for (int a = 0; a < k; a++) {
+            double best = Double.NEGATIVE_INFINITY;
+            int tried = 0;
+            for (int b = 0; b < k; b++) {
+                if (b == a) {
+                    continue;
+                }
+                for (int gap = Math.max(lo[b] - hi[a], -lo[a]); gap <= hi[b] - lo[a]; gap++) {
+                    if (lo[a] + gap + h > n) {
+                        break;
+                    }
+                    best = Math.max(best, pairing(codes, lo[a], lo[a] + gap, h));
+                    tried++;
+                }
+            }
+            // Expected maximum of that many standard normals, roughly
+            double chance = Math.sqrt(2 * Math.log(Math.max(2, tried)));
+            total += (best - chanceMean) / sd - chance;
+        }
+        return total / k;
+    }
+
+    /** Mean log probability of the letter pairs (codes[a + i], codes[b + i]) for i < h, skipping non-letters. */
+    private double pairing(int[] codes, int a, int b, int h) {
+        double sum = 0;
+        int pairs = 0;
+        for (int i = 0; i < h; i++) {
+            int x = codes[a + i];
+            int y = codes[b + i];
+            if (x >= 0 && y >= 0) {
+                sum += model.logProb(x, y);
+                pairs++;
+            }
+        }
+        return pairs == 0 ? model.floor() : sum / pairs;
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * A set of words that Dictionary can be backed by. Lookups are case-insensitive and take a region of a larger
+ * text, so callers scanning a candidate plaintext never have to cut it into Strings.
+ */
+public interface Lexicon {
+
+    /** Is s[from, to) a word. */
+    boolean isWord(CharSequence s, int from, int to);
+
+    boolean isWord(char[] s, int from, int to);
+
+    /** Is s[from, to) the start of at least one word. The empty region is a prefix of everything. */
+    boolean hasPrefix(CharSequence s, int from, int to);
+
+    boolean hasPrefix(char[] s, int from, int to);
+
+    /** Number of words. */
+    int size();
+}
@@ -0,0 +1,195 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Candidates-to-solution for bigram, trigram and quadgram scoring. Each trial encrypts a short English text with a
+ * random key and runs the same restarting hill climb under every scorer, counting how many candidate keys it scores
+ * before at least SOLVED of the decrypted letters are right. Run from the repo root (run NgramCompiler first, or the
+ * tables are trained on startup).
+ */
+public class NgramBenchmark {
+
+    static final String TEXT = SampleText.TEXT;
+
+    static final int TRIALS = 9;
+    static final long BUDGET = 2_000_000;    // candidates before a trial counts as a failure
+    static final int PATIENCE = 3_000;       // candidates without improvement before restarting
+    static final double SOLVED = 0.95;       // fraction of letters that must be right
+
+    /**
+     * Whether out is close enough to plain to count as cracked. Exact matches are too strict for substitution, where
+     * a letter that occurs once or twice can stay swapped with no effect on the score.
+     */
+    static boolean solved(char[] out, char[] plain) {
+        int right = 0;
+        for (int i = 0; i < out.length; i++) {
+            if (out[i] == plain[i]) {
+                right++;
+            }
+        }
+        return right >= SOLVED * plain.length;
+    }
+
+    static char[] letters(String text) {
+        return SampleText.letters(text);
+    }
+
+    static void shuffle(int[] a, Random r) {
+        for (int i = a.length - 1; i > 0; i--) {
+            int j = r.nextInt(i + 1);
+            int t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+
+    static int[] identity(int n) {
+        int[] a = new int[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = i;
+        }
+        return a;
+    }
+
+    /** Decrypt a simple substitution: plaintext letter key[c] for ciphertext letter c. */
+    static void substitute(char[] cipher, int[] key, char[] out) {
+        for (int i = 0; i < cipher.length; i++) {
+            out[i] = (char) ('a' + key[cipher[i] - 'a']);
+        }
+    }
+
+    /** Read columns in order[] back into rows of order.length columns, no padding. */
+    static void untranspose(char[] cipher, int[] order, char[] out) {
+        int cols = order.length;
+        int rows = (cipher.length + cols - 1) / cols;
+        int full = cipher.length % cols == 0 ? cols : cipher.length % cols;
+        int pos = 0;
+        for (int k = 0; k < cols; k++) {
+            int col = order[k];
+            int height = col < full ? rows : rows - 1;
+            for (int r = 0; r < height; r++) {
+                out[r * cols + col] = cipher[pos++];
+            }
+        }
+    }
+
+    static char[] transpose(char[] plain, int[] order) {
+        char[] out = new char[plain.length];
+        int pos = 0;
+        for (int col : order) {
+            for (int i = col; i < plain.length; i += order.length) {
+                out[pos++] = plain[i];
+            }
+        }
+        return out;
+    }
+
+    /** One decryption given a key, written to out. */
+    interface Decrypt {
+        void apply(char[] cipher, int[] key, char[] out);
+    }
+
+    /**
+     * Swap-two-positions hill climb with random restarts.
+     * @return Candidates scored before out matched plain, or -1 if the budget ran out.
+     */
+    static long climb(char[] cipher, char[] plain, int keySize, Decrypt decrypt, PlaintextScorer scorer, Random r) {
+        char[] out = new char[cipher.length];
+        int[] key = identity(keySize);
+        long candidates = 0;
+        while (candidates < BUDGET) {
+            shuffle(key, r);
+            decrypt.apply(cipher, key, out);
+            double best = scorer.score(out, 0, out.length);
+            candidates++;
+            int stale = 0;
+            while (stale < PATIENCE && candidates < BUDGET) {
+                if (solved(out, plain)) {
+                    return candidates;
+                }
+                int i = r.nextInt(keySize);
+                int j = r.nextInt(keySize);
+                if (i == j) {
+                    continue;
+                }
+                int t = key[i];
+                key[i] = key[j];
+                key[j] = t;
+                decrypt.apply(cipher, key, out);
+                double s = scorer.score(out, 0, out.length);
+                candidates++;
+                if (s > best) {
+                    best = s;
+                    stale = 0;
+                } else {
+                    key[j] = key[i];
+                    key[i] = t;
+                    stale++;
+                }
+            }
+            decrypt.apply(cipher, key, out);
+            if (solved(out, plain)) {
+                return candidates;
+            }
+        }
+        return -1;
+    }
+
+    static void report(String label, long[] results, long nanos) {
+        long[] solved = Arrays.stream(results).filter(c -> c >= 0).sorted().toArray();
+        String median = solved.length == 0 ? "-" : String.format("%,d", solved[solved.length / 2]);
+        System.out.printf("%-32s solved %d/%d  median %12s candidates  %,8d ms%n", label, solved.length,
+                results.length, median, nanos / 1_000_000);
+    }
+
+    static void run(String name, char[] plain, int keySize, Decrypt decrypt, boolean transposition) {
+        String[] labels = {"bigram", "trigram", "quadgram", "quadgram + bigram"};
+        PlaintextScorer[] scorers = {new BigramScorer(), NgramScorer.trigrams(), NgramScorer.quadgrams(),
+                WeightedScorer.builder().add(NgramScorer.quadgrams(), 1).add(new BigramScorer(), 1).build()};
+        Random keys = new Random(42);
+        char[][] ciphers = new char[TRIALS][];
+        for (int t = 0; t < TRIALS; t++) {
+            int[] key = identity(keySize);
+            shuffle(key, keys);
+            if (transposition) {
+                ciphers[t] = transpose(plain, key);
+            } else {
+                // Encrypt with the inverse, so key itself is what decrypts
+                char[] enc = new char[plain.length];
+                int[] inv = new int[keySize];
+                for (int i = 0; i < keySize; i++) {
+                    inv[key[i]] = i;
+                }
+                for (int i = 0; i < plain.length; i++) {
+                    enc[i] = (char) ('a' + inv[plain[i] - 'a']);
+                }
+                ciphers[t] = enc;
+            }
+        }
+        System.out.println(name + ", " + plain.length + " letters, key size " + keySize + ":");
+        for (int s = 0; s < scorers.length; s++) {
+            long[] results = new long[TRIALS];
+            long start = System.nanoTime();
+            for (int t = 0; t < TRIALS; t++) {
+                results[t] = climb(ciphers[t], plain, keySize, decrypt, scorers[s], new Random(1000 + t));
+            }
+            report("  " + labels[s], results, System.nanoTime() - start);
+        }
+    }
+
+    public static void main(String[] args) {
+        char[] plain = letters(TEXT);
+        run("Substitution", plain, BigramModel.A, NgramBenchmark::substitute, false);
+        run("Columnar transposition", plain, 9, NgramBenchmark::untranspose, true);
+        PlaintextScorer[] scorers = {new BigramScorer(), NgramScorer.quadgrams()};
+        for (PlaintextScorer scorer : scorers) {
+            Bench.rate(scorer.getClass().getSimpleName() + " letters", 10_000L * plain.length, 5, 10, () -> {
+                double total = 0;
+                for (int i = 0; i < 10_000; i++) {
+                    total += scorer.score(plain, 0, plain.length);
+                }
+                Bench.consume(total);
+            });
+        }
+    }
+}
@@ -0,0 +1,34 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Build step that trains the trigram and quadgram tables from dict.txt, or another training text, and writes them
+ * where Trigrams and Quadgrams look for them.
+ *
+ * Usage: java NgramCompiler [dict.txt] [trigrams.bin] [quadgrams.bin]
+ *
+ * Like dict.bin, each table records its training text's path, size and modification time, and is retrained from that
+ * text once it changes.
+ */
+public class NgramCompiler {
+
+    public static void main(String[] args) throws IOException {
+        Path text = Paths.get(args.length > 0 ? args[0] : "dict.txt");
+        Path[] tables = {
+            Paths.get(args.length > 1 ? args[1] : "trigrams.bin"),
+            Paths.get(args.length > 2 ? args[2] : "quadgrams.bin"),
+        };
+        List<String> words = Dictionary.readWords(text.toString());
+        for (int i = 0; i < tables.length; i++) {
+            int n = 3 + i;
+            long start = System.nanoTime();
+            NgramModel model = NgramModel.train(n, words);
+            model.save(tables[i], text.toString(), Files.size(text), Files.getLastModifiedTime(text).toMillis());
+            System.out.printf("%s: n = %d, floor %.2f, %,d bytes in %d ms%n", tables[i], n, model.floor(),
+                    Files.size(tables[i]), (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,349 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Log probabilities of letter n-grams (n = 3 for trigrams, 4 for quadgrams) in one flat float[26^n], indexed by the
+ * n-gram read as a base 26 number. A quadgram table is 457k floats, about 1.8 MB.
+ *
+ * Scoring keeps a rolling index: each letter subtracts the digit leaving the window and appends its own, so a whole
+ * text costs a couple of multiplies and one table read per letter, with no division. Anything that isn't a letter
+ * (spaces, punctuation) restarts the window, the same way the training words were counted.
+ */
+public final class NgramModel {
+
+    public static final int A = BigramModel.A;
+
+    static final int MAGIC = 0x4E474D31; // "NGM1"
+    static final int HEADER_BYTES = 40;
+
+    /**
+     * Same property and default as Dictionary.DICT_PATH, read here so that checking a table against the word list
+     * doesn't initialise Dictionary, which loads the whole lexicon.
+     */
+    private static final String WORDS_PATH = System.getProperty("dictionary.path", "dict.txt");
+
+    private final int n;
+    private final int size;   // A^n
+    private final int carry;  // A^(n-1), the place value of the oldest letter in the window
+    private final float[] logProb;
+    private final float floor;
+
+    NgramModel(int n, float[] logProb, float floor) {
+        this.n = n;
+        int s = 1;
+        for (int i = 0; i < n; i++) {
+            s *= A;
+        }
+        if (logProb.length != s) {
+            throw new IllegalArgumentException("Expected " + s + " entries for n = " + n + ", got " + logProb.length);
+        }
+        this.size = s;
+        this.carry = s / A;
+        this.logProb = logProb;
+        this.floor = floor;
+    }
+
+    /**
+     * Count every n-gram inside each word and turn the counts into log probabilities. N-grams never seen get
+     * log(0.01 / total), a hundredth of the rarest possible count.
+     * @param n Gram length, 1 to 5.
+     * @param words Training text, one word or phrase per entry. Non-letters break the window.
+     */
+    public static NgramModel train(int n, Iterable<String> words) {
+        if (n < 1 || n > 5) {
+            throw new IllegalArgumentException("Unsupported n-gram length " + n);
+        }
+        int size = 1;
+        for (int i = 0; i < n; i++) {
+            size *= A;
+        }
+        int carry = size / A;
+        int[] counts = new int[size];
+        long total = 0;
+        for (String w : words) {
+            int idx = 0;
+            int run = 0;
+            for (int i = 0; i < w.length(); i++) {
+                int c = BigramModel.code(w.charAt(i));
+                if (c < 0) {
+                    run = 0;
+                    continue;
+                }
+                idx = (idx % carry) * A + c;
+                if (++run >= n) {
+                    counts[idx]++;
+                    total++;
+                }
+            }
+        }
+        float floor = (float) Math.log(0.01 / Math.max(1, total));
+        float[] logProb = new float[size];
+        for (int i = 0; i < size; i++) {
+            logProb[i] = counts[i] > 0 ? (float) Math.log((double) counts[i] / total) : floor;
+        }
+        return new NgramModel(n, logProb, floor);
+    }
+
+    public int n() {
+        return n;
+    }
+
+    public float floor() {
+        return floor;
+    }
+
+    /**
+     * Log probability of the n-gram with the given base 26 index.
+     */
+    public float logProb(int index) {
+        return logProb[index];
+    }
+
+    /**
+     * Sum of log probabilities of every n-gram of consecutive letters in text[from, to).
+     */
+    public double score(char[] text, int from, int to) {
+        float[] lp = logProb;
+        double total = 0.0;
+        int idx = 0;
+        int run = 0;
+        for (int i = from; i < to; i++) {
+            int c = BigramModel.code(text[i]);
+            if (c < 0) {
+                run = 0;
+                idx = 0;
+                continue;
+            }
+            if (run == n) {
+                // The window is full of letters, so the one leaving it is exactly n chars back
+                idx -= BigramModel.code(text[i - n]) * carry;
+            } else {
+                run++;
+            }
+            idx = idx * A + c;
+            if (run == n) {
+                total += lp[idx];
+            }
+        }
+        return total;
+    }
+
+    public double score(CharSequence text, int from, int to) {
+        float[] lp = logProb;
+        double total = 0.0;
+        int idx = 0;
+        int run = 0;
+        for (int i = from; i < to; i++) {
+            int c = BigramModel.code(text.charAt(i));
+            if (c < 0) {
+                run = 0;
+                idx = 0;
+                continue;
+            }
+            if (run == n) {
+                // The window is full of letters, so the one leaving it is exactly n chars back
+                idx -= BigramModel.code(text.charAt(i - n)) * carry;
+            } else {
+                run++;
+            }
+            idx = idx * A + c;
+            if (run == n) {
+                total += lp[idx];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Same as score(char[], ...) over codes from BigramModel.encode(). Negative codes restart the window.
+     */
+    public double score(int[] codes, int from, int to) {
+        float[] lp = logProb;
+        double total = 0.0;
+        int idx = 0;
+        int run = 0;
+        for (int i = from; i < to; i++) {
+            int c = codes[i];
+            if (c < 0) {
+                run = 0;
+                idx = 0;
+                continue;
+            }
+            if (run == n) {
+                // The window is full of letters, so the one leaving it is exactly n chars back
+                idx -= codes[i - n] * carry;
+            } else {
+                run++;
+            }
+            idx = idx * A + c;
+            if (run == n) {
+                total += lp[idx];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Write the table so load() can map it back without retraining.
+     *
+     * Layout (big endian): magic "NGM1", n i32, alphabet size i32, floor f32, source size i64, source modified i64,
+     * payload CRC32 i32, source path length i32, the source path in UTF-8 padded to 4 bytes, then logProb f32[A^n].
+     *
+     * @param path Where to write.
+     * @param source Path of the training text, which open() checks the table against. Must not be empty.
+     * @param sourceSize Size of the training text, so a stale table can be detected.
+     * @param sourceModified Modification time of the training text, in milliseconds.
+     */
+    public void save(Path path, String source, long sourceSize, long sourceModified) throws IOException {
+        if (source.isEmpty()) {
+            throw new IllegalArgumentException("The training text's path is required");
+        }
+        byte[] name = source.getBytes(StandardCharsets.UTF_8);
+        int payload = payloadOffset(name.length);
+        ByteBuffer buf = ByteBuffer.allocate(payload + 4 * size);
+        buf.position(HEADER_BYTES);
+        buf.put(name);
+        buf.position(payload);
+        buf.asFloatBuffer().put(logProb);
+        buf.putInt(0, MAGIC);
+        buf.putInt(4, n);
+        buf.putInt(8, A);
+        buf.putFloat(12, floor);
+        buf.putLong(16, sourceSize);
+        buf.putLong(24, sourceModified);
+        buf.putInt(32, crc(buf, payload, 4 * size));
+        buf.putInt(36, name.length);
+        buf.clear();
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+        }
+    }
+
+    /**
+     * Read a table written by save().
+     * @param path The table.
+     * @param sourceSize Expected training text size, or -1 to accept any.
+     * @param sourceModified Expected training text modification time, or -1 to accept any.
+     * @return The model, or null if the table was built from a different text.
+     * @throws IOException If the file can't be read or is corrupt.
+     */
+    public static NgramModel load(Path path, long sourceSize, long sourceModified) throws IOException {
+        MappedByteBuffer map;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        if (map.limit() < HEADER_BYTES || map.getInt(0) != MAGIC) {
+            throw new IOException("Not an n-gram table: " + path);
+        }
+        if ((sourceSize >= 0 && map.getLong(16) != sourceSize)
+                || (sourceModified >= 0 && map.getLong(24) != sourceModified)) {
+            return null;
+        }
+        int n = map.getInt(4);
+        if (n < 1 || n > 5 || map.getInt(8) != A) {
+            throw new IOException("Corrupt n-gram table: " + path);
+        }
+        int size = 1;
+        for (int i = 0; i < n; i++) {
+            size *= A;
+        }
+        int nameLength = map.getInt(36);
+        if (nameLength < 0 || payloadOffset(nameLength) + 4L * size != map.limit()) {
+            throw new IOException("Corrupt n-gram table: " + path);
+        }
+        int payload = payloadOffset(nameLength);
+        if (crc(map, payload, 4 * size) != map.getInt(32)) {
+            throw new IOException("N-gram table checksum mismatch: " + path);
+        }
+        float[] logProb = new float[size];
+        map.position(payload);
+        map.asFloatBuffer().get(logProb);
+        return new NgramModel(n, logProb, map.getFloat(12));
+    }
+
+    /**
+     * The training text a table was built from, as recorded by save(), or null if none is recorded.
+     * @throws IOException If the file can't be read or isn't an n-gram table.
+     */
+    static String source(Path path) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (header.hasRemaining() && ch.read(header) >= 0) {
+                // keep reading
+            }
+            if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+                throw new IOException("Not an n-gram table: " + path);
+            }
+            int length = header.getInt(36);
+            if (length == 0) {
+                return null;
+            }
+            if (length < 0 || HEADER_BYTES + (long) length > ch.size()) {
+                throw new IOException("Corrupt n-gram table: " + path);
+            }
+            ByteBuffer name = ByteBuffer.allocate(length);
+            while (name.hasRemaining() && ch.read(name, HEADER_BYTES + name.position()) >= 0) {
+                // keep reading
+            }
+            return new String(name.array(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Load the compiled table if it matches the text it was trained from (or that text is missing), otherwise train
+     * again from that text. Same policy Dictionary uses for dict.bin. A table that doesn't record its text counts as
+     * stale and the word list is trained on instead.
+     * @param n Gram length.
+     * @param table Table written by NgramCompiler. Set it to "none" to always train from the word list.
+     */
+    static NgramModel open(int n, String table) throws IOException {
+        Path compiled = Paths.get(table);
+        String source = WORDS_PATH;
+        if (!table.equals("none") && Files.isReadable(compiled)) {
+            boolean haveText = Files.exists(Paths.get(source));
+            try {
+                String recorded = source(compiled);
+                if (recorded != null) {
+                    source = recorded;
+                    Path text = Paths.get(source);
+                    haveText = Files.exists(text);
+                    long size = haveText ? Files.size(text) : -1;
+                    long modified = haveText ? Files.getLastModifiedTime(text).toMillis() : -1;
+                    NgramModel model = load(compiled, size, modified);
+                    if (model != null && model.n == n) {
+                        return model;
+                    }
+                }
+            } catch (IOException ioEx) {
+                if (!haveText) {
+                    throw ioEx;
+                }
+            }
+        }
+        return train(n, Dictionary.readWords(source));
+    }
+
+    /** Where the floats start after a source path of the given length, kept 4-aligned. */
+    private static int payloadOffset(int nameLength) {
+        return HEADER_BYTES + (nameLength + 3 & ~3);
+    }
+
+    private static int crc(ByteBuffer buf, int offset, int length) {
+        CRC32 crc = new CRC32();
+        ByteBuffer slice = buf.duplicate();
+        slice.position(offset).limit(offset + length);
+        crc.update(slice);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Sum of log probabilities of every run of n consecutive letters, from Trigrams or Quadgrams. Much sharper than
+ * BigramScorer on short texts, so a hill climb needs far fewer candidates before it locks on. Case is ignored and
+ * non-letters restart the window.
+ */
+public class NgramScorer implements PlaintextScorer {
+
+    private final NgramModel model;
+    private final CipherMetrics.Counter metrics;
+
+    /** Quadgram scoring, the usual choice for substitution and transposition searches. */
+    public NgramScorer() {
+        this(Quadgrams.model);
+    }
+
+    public NgramScorer(NgramModel model) {
+        this.model = model;
+        this.metrics = CipherMetrics.scorer(
+                model.n() == 3 ? "trigram" : model.n() == 4 ? "quadgram" : model.n() + "-gram");
+    }
+
+    public static NgramScorer trigrams() {
+        return new NgramScorer(Trigrams.model);
+    }
+
+    public static NgramScorer quadgrams() {
+        return new NgramScorer(Quadgrams.model);
+    }
+
+    @Override
+    public double score(char[] text, int from, int to) {
+        CipherMetrics.ScoreEvent event = CipherMetrics.beginScore();
+        double score = model.score(text, from, to);
+        CipherMetrics.scored(event, metrics, to - from);
+        return score;
+    }
+
+    @Override
+    public double score(CharSequence text, int from, int to) {
+        CipherMetrics.ScoreEvent event = CipherMetrics.beginScore();
+        double score = model.score(text, from, to);
+        CipherMetrics.scored(event, metrics, to - from);
+        return score;
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * Fitness function for candidate plaintexts. Crackers call this once per candidate key, so implementations work on
+ * a region of an existing buffer and must not allocate. Higher scores mean more English-like text. Scores from
+ * different scorers are on different scales; use WeightedScorer to mix them.
+ */
+public interface PlaintextScorer {
+
+    double score(char[] text, int from, int to);
+
+    double score(CharSequence text, int from, int to);
+
+    default double score(String text) {
+        return score(text, 0, text.length());
+    }
+}
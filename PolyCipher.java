@@ -11,11 +11,17 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public class PolyCipher extends Cipher {
 
+    // The fixed alphabet convert() indexes the beta matrix with
+    static final AlphabetCodec DEFAULT_ALPHABET = AlphabetCodec.of("abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789.,!?'\";:/");
+
     private final String key;
     private char[][] square;
+    private BetaSquare bound; // a shared square from a keystore, used instead of square when set
+    private volatile Compiled compiled;
 
     ////////////////////////////////////////////////////////////////////
     /// Constructors                                                  //
@@ -42,6 +48,14 @@ public class PolyCipher extends Cipher {
         this.square = beta;
     }
 
+    // Binds to an already compiled square, e.g. one from a BetaKeystore. The square is shared, not copied.
+    public PolyCipher(String k, BetaSquare beta) {
+        this.key = PolyCipher.clean(k);
+        this.alphabet = getAlphabet(new String[] {"lower"});
+        this.square = null;
+        this.bound = beta;
+    }
+
     ////////////////////////////////////////////////////////////////////
     /// Functions                                                     //
     ////////////////////////////////////////////////////////////////////
@@ -54,57 +68,260 @@ public class PolyCipher extends Cipher {
          */
     @Override
     public String encrypt(String plaintext) {
-        String output = "";
-        plaintext = PolyCipher.clean(plaintext);
-        int keyIndexCounter = 0;
-
-        // Iterate over each character of our cleaned plaintext, and encrypt it with the appropriately matching character from our key
-        for(char c : plaintext.toCharArray()) {
-            char betaIndexChar = this.key.charAt(keyIndexCounter);
-            int betaIndex = convert(betaIndexChar);
-            char[] currentCipher = this.square[betaIndex];
-            int plaintextIndex = convert(c);
-            char cipherChar = currentCipher[plaintextIndex];
-            output += cipherChar;
-            
-            // Logic to loop around the pointer as needed over our key.
-            if (keyIndexCounter >= this.key.length() - 1) {
-                keyIndexCounter = 0;
-            } else {
-                keyIndexCounter++;
-            }
-        }
-        return output;
+        CipherMetrics.CipherEvent event = CipherMetrics.begin();
+        String out = run(encryptor(), plaintext);
+        CipherMetrics.end(event, this, true, plaintext.length());
+        return out;
     }
 
     @Override
     public String decrypt(String ciphertext) {
-        String output = "";
-        int keyIndexCounter = 0;
-
-        // Iterate over each character of our cleaned plaintext, and encrypt it with the appropriately matching character from our key
-        for(char c : ciphertext.toCharArray()) {
-            char betaIndexChar = this.key.charAt(keyIndexCounter);
-            int betaIndex = convert(betaIndexChar);
-            char[] currentCipher = this.square[betaIndex];
-    
-            String currentCipherString = new String(currentCipher);
-            int plainTextIndex = currentCipherString.indexOf(c);
-            char plainTextChar = convert(plainTextIndex);
-
-            output += plainTextChar;
-            
-            // Logic to loop around the pointer as needed over our key.
-            if (keyIndexCounter >= (this.key.length() - 1)) {
-                keyIndexCounter = 0;
+        CipherMetrics.CipherEvent event = CipherMetrics.begin();
+        String out = run(decryptor(), ciphertext);
+        CipherMetrics.end(event, this, false, ciphertext.length());
+        return out;
+    }
+
+    @Override
+    protected CharTransform encryptor() {
+        return new KeyedTransform(true);
+    }
+
+    @Override
+    protected CharTransform decryptor() {
+        return new KeyedTransform(false);
+    }
+
+    @Override
+    protected ByteTransform byteEncryptor() {
+        return byteTransform(true, 0);
+    }
+
+    @Override
+    protected ByteTransform byteDecryptor() {
+        return byteTransform(false, 0);
+    }
+
+    /**
+     * A byte transform that starts keyPosition chars into the message, i.e. at key char keyPosition mod keyLength(),
+     * so a long message can be ciphered in pieces. Null if the square isn't ASCII.
+     */
+    ByteTransform byteTransform(boolean encrypt, long keyPosition) {
+        if (compiled().ascii() == null) {
+            return null;
+        }
+        KeyedTransform t = new KeyedTransform(encrypt);
+        t.keyIndexCounter = (int) (keyPosition % Math.max(1, t.compiled.keyRows.length));
+        return t;
+    }
+
+    /** Length of the key after whitespace is cleaned out; the key repeats with this period. */
+    int keyLength() {
+        return key.length();
+    }
+
+    private static String run(CharTransform transform, String text) {
+        char[] chars = text.toCharArray();
+        int n = transform.apply(chars, 0, chars.length, chars, 0);
+        return new String(chars, 0, n);
+    }
+
+    /**
+     * Matches the \s class clean() strips with its regex.
+     */
+    static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Resolve every key char to its beta row once, instead of per encrypted char. -1 marks a key char that isn't in
+     * the square's alphabet.
+     */
+    private static int[] compileKey(String key, AlphabetCodec alpha) {
+        int[] rows = new int[key.length()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = alpha.indexOf(key.charAt(i));
+        }
+        return rows;
+    }
+
+    /**
+     * The square in use together with the key schedule for its alphabet. Heap squares are recompiled whenever
+     * getBeta(), generateSquare() or scrambleSquare() changes them.
+     */
+    private static final class Compiled {
+        final char[][] source;
+        final BetaSquare beta;
+        final int[] keyRows;
+        private AsciiRows ascii;
+        private boolean asciiBuilt;
+
+        Compiled(char[][] source, BetaSquare beta, String key) {
+            this.source = source;
+            this.beta = beta;
+            this.keyRows = compileKey(key, beta.alphabet());
+        }
+
+        /** The square as byte tables, built on first use; null if the square isn't all ASCII. */
+        synchronized AsciiRows ascii() {
+            if (!asciiBuilt) {
+                ascii = AsciiRows.of(beta, keyRows);
+                asciiBuilt = true;
+            }
+            return ascii;
+        }
+    }
+
+    /**
+     * The square as 256-entry byte tables, one pair per key position (positions with the same row share them), for
+     * the ByteBuffer API: encrypt[pos][p] is the cipher byte for plaintext byte p and decrypt[pos][c] the plaintext
+     * byte for cipher byte c. 0 marks a byte outside the alphabet, whitespace when encrypting, and a byte the row never
+     * produces; NUL is never in an alphabet.
+     */
+    private static final class AsciiRows {
+        final byte[][] encrypt;
+        final byte[][] decrypt;
+
+        private AsciiRows(byte[][] encrypt, byte[][] decrypt) {
+            this.encrypt = encrypt;
+            this.decrypt = decrypt;
+        }
+
+        static AsciiRows of(BetaSquare beta, int[] keyRows) {
+            AlphabetCodec alpha = beta.alphabet();
+            if (!alpha.isAscii()) {
+                return null;
+            }
+            int n = beta.size();
+            byte[][] encryptRows = new byte[n][256];
+            byte[][] decryptRows = new byte[n][256];
+            for (int row = 0; row < n; row++) {
+                for (int p = 0; p < n; p++) {
+                    char c = beta.cipher(row, p);
+                    if (c == 0 || c >= 0x80) {
+                        return null;
+                    }
+                    encryptRows[row][alpha.charAt(p)] = (byte) c;
+                    decryptRows[row][c] = (byte) alpha.charAt(p);
+                }
+                for (int b = 0; b < 256; b++) {
+                    if (isWhitespace((char) b)) {
+                        encryptRows[row][b] = 0;
+                    }
+                }
+            }
+            byte[][] encrypt = new byte[keyRows.length][];
+            byte[][] decrypt = new byte[keyRows.length][];
+            for (int pos = 0; pos < keyRows.length; pos++) {
+                // A key char outside the alphabet has no row; using it fails as the char path does
+                if (keyRows[pos] >= 0) {
+                    encrypt[pos] = encryptRows[keyRows[pos]];
+                    decrypt[pos] = decryptRows[keyRows[pos]];
+                }
+            }
+            return new AsciiRows(encrypt, decrypt);
+        }
+    }
+
+    private Compiled compiled() {
+        Compiled c = compiled;
+        BetaSquare b = bound;
+        if (b != null) {
+            if (c == null || c.beta != b) {
+                c = new Compiled(null, b, key);
+                compiled = c;
+            }
+        } else if (c == null || c.source != square) {
+            c = new Compiled(square, new HeapBetaSquare(square, DEFAULT_ALPHABET), key);
+            compiled = c;
+        }
+        return c;
+    }
+
+    /**
+     * Use a square from a keystore for encryption and decryption. Cleared again by getBeta(), generateSquare() and
+     * scrambleSquare(), which work on this cipher's own matrix.
+     */
+    public void bind(BetaSquare beta) {
+        this.bound = beta;
+        this.compiled = null;
+    }
+
+    /**
+     * Walks the key across one message. The key position lives here rather than in a local so that it carries over
+     * from one chunk of a stream to the next.
+     */
+    private final class KeyedTransform implements CharTransform, ByteTransform {
+        private final boolean encrypt;
+        private final Compiled compiled = compiled();
+        private int keyIndexCounter = 0;
+
+        KeyedTransform(boolean encrypt) {
+            this.encrypt = encrypt;
+        }
+
+        @Override
+        public int apply(char[] in, int from, int to, char[] out, int outOffset) {
+            int[] rows = compiled.keyRows;
+            BetaSquare beta = compiled.beta;
+            AlphabetCodec alpha = beta.alphabet();
+            int pos = keyIndexCounter;
+            int written = outOffset;
+            if (encrypt) {
+                for (int i = from; i < to; i++) {
+                    char c = in[i];
+                    // Same as cleaning the whole plaintext up front, but works on a chunk at a time
+                    if (isWhitespace(c)) {
+                        continue;
+                    }
+                    out[written++] = beta.cipher(rows[pos], alpha.indexOf(c));
+                    if (++pos == rows.length) {
+                        pos = 0;
+                    }
+                }
             } else {
-                keyIndexCounter++;
+                for (int i = from; i < to; i++) {
+                    out[written++] = alpha.charAt(beta.plain(rows[pos], in[i]));
+                    if (++pos == rows.length) {
+                        pos = 0;
+                    }
+                }
             }
+            keyIndexCounter = pos;
+            return written - outOffset;
+        }
+
+        @Override
+        public int apply(byte[] in, int from, int to, byte[] out, int outOffset) {
+            AsciiRows ascii = compiled.ascii();
+            byte[][] tables = encrypt ? ascii.encrypt : ascii.decrypt;
+            int pos = keyIndexCounter;
+            int written = outOffset;
+            for (int i = from; i < to; i++) {
+                int b = in[i] & 0xFF;
+                byte c = tables[pos][b];
+                if (c == 0) {
+                    if (encrypt && isWhitespace((char) b)) {
+                        continue;
+                    }
+                    throw new IllegalArgumentException("'" + (char) b + "' is not in the "
+                            + (encrypt ? "alphabet" : "key row"));
+                }
+                out[written++] = c;
+                if (++pos == tables.length) {
+                    pos = 0;
+                }
+            }
+            keyIndexCounter = pos;
+            return written - outOffset;
         }
-        return output;
     }
 
     public void generateSquare() {
+        if (square == null) {
+            square = new char[alphabet.size()][alphabet.size()];
+        }
+        bound = null;
         CaesarCipher generator = new CaesarCipher(0, alphabet);
         StringBuilder plaintext = new StringBuilder();
         for (char c : alphabet) {
@@ -114,45 +331,51 @@ public class PolyCipher extends Cipher {
             square[row] = generator.encrypt(plaintext.toString()).toCharArray();
             generator.setKey(row+1);
         }
+        compiled = null;
     }
 
     public void scrambleSquare() {
-        for(int row = 0; row < square.length * 10; row++) {
-            int a = Rand.randInt(square.length);
-            int b = Rand.randInt(square.length);
-            char[] swap = square[a];
-            square[a] = square[b];
-            square[b] = swap;
-        }
-        for (int col = 0; col < square.length * 10; col++) {
-            int a = Rand.randInt(square.length);
-            int b = Rand.randInt(square.length);
-            for (int row = 0; row < square.length; row++) {
-                char c = square[row][a];
-                square[row][a] = square[row][b];
-                square[row][b] = c;
-            }
-        }
+        scrambleSquare(Rand.local());
+    }
+
+    /**
+     * Shuffle the square's rows and columns, each by one random permutation; a seeded Rand gives the same square every
+     * run.
+     */
+    public void scrambleSquare(Rand rand) {
+        bound = null;
+        KeyFactory.scramble(square, rand);
+        compiled = null;
     }
 
     public static String generateKey(String plaintext, ArrayList<Character> alpha) {
-        StringBuilder k = new StringBuilder();
-        for (int i = 0; i < plaintext.length(); i++) {
-            int idx = Rand.randInt(alpha.size());
-            k.append(alpha.get(idx));
-        }
-        return k.toString();
+        return generateKey(plaintext, alpha, Rand.local());
+    }
+
+    /**
+     * A key as long as the plaintext, drawn from alpha in one bulk fill.
+     */
+    public static String generateKey(String plaintext, ArrayList<Character> alpha, Rand rand) {
+        return KeyFactory.runningKey(plaintext.length(), alpha, rand);
+    }
+
+    /**
+     * Use the given square, e.g. one from KeyFactory.square(), in place of this cipher's own. It is not copied.
+     * @param beta The beta matrix, one row and one column per alphabet char.
+     */
+    public void setSquare(char[][] beta) {
+        this.square = beta;
+        this.bound = null;
+        this.compiled = null;
     }
 
     /**
      * Prints the beta matrix for this PolyCipher object.
      */
     public void printSquare() {
-        for (int row = 0; row < square.length; row++) {
-            for (int col = 0; col < square.length; col++) {
-                System.out.print(this.square[row][col]);
-            }
-            System.out.println();
+        BetaSquare beta = compiled().beta;
+        for (int row = 0; row < beta.size(); row++) {
+            System.out.println(beta.row(row));
         }
     }
 
@@ -164,8 +387,7 @@ public class PolyCipher extends Cipher {
          * @return The number representation of our character
          */
     public int convert(char character) {
-        String defaultAlphabet = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789.,!?'\";:/";
-        return defaultAlphabet.indexOf(character);
+        return DEFAULT_ALPHABET.indexOf(character);
     }
     
     /**
@@ -176,8 +398,7 @@ public class PolyCipher extends Cipher {
          * @return The character representation of our number
          */
     public char convert (int number) {
-        String defaultAlphabet = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789.,!?'\";:/";
-        return defaultAlphabet.charAt(number);
+        return DEFAULT_ALPHABET.charAt(number);
     }
 
     /**
@@ -205,9 +426,24 @@ public class PolyCipher extends Cipher {
         }
 
         this.square = output;
+        this.bound = null;
         return output;
     }
 
+    /**
+     * Bind this cipher to a square from a binary keystore. Nothing is parsed or copied, the square is read from the
+     * keystore's memory map.
+     *
+     * @param keystore The opened keystore.
+     * @param id The id of the square to use.
+     * @return The bound square.
+     */
+    public BetaSquare getBeta(BetaKeystore keystore, int id) {
+        BetaSquare beta = keystore.square(id);
+        bind(beta);
+        return beta;
+    }
+
     /**
      * Cleans whitespaces from plaintext.
      * @param plainText
@@ -218,7 +454,7 @@ public class PolyCipher extends Cipher {
     }
 
     /**
-    * Writes the beta matrix from this.square to matrix.csv. Lines of the matrix should appear in the csv exactly as they do when printed.
+    * Writes the beta matrix in use to matrix.csv. Lines of the matrix should appear in the csv exactly as they do when printed.
     * (Same number of rows and columns, a square)
     */
     public void storeBeta() {
@@ -227,8 +463,9 @@ public class PolyCipher extends Cipher {
         // Attempts to write to the csv
         try (PrintWriter writer = new PrintWriter(new FileWriter(outputName))) {
             // Write each row of the matrix to matrix.csv
-            for (int row = 0; row < square.length; row++) {
-                char[] betaRow = this.square[row];
+            BetaSquare beta = compiled().beta;
+            for (int row = 0; row < beta.size(); row++) {
+                char[] betaRow = beta.row(row);
                 writer.println(betaRow); // Writes a row of the matrix to the csv output
             }
         } catch (IOException e) {
@@ -236,6 +473,16 @@ public class PolyCipher extends Cipher {
         }
     }
 
+    /**
+     * Recover the plaintext of a message encrypted under an unknown scrambled square and an unknown repeating key.
+     * See PolyCracker for how, and for what a key period can be.
+     * @param ciphertext The ciphertext, over the default alphabet.
+     * @return The shifts and substitution found, and the plaintext without whitespace.
+     */
+    public static CrackResult<PolyCracker.Key> crack(String ciphertext) {
+        return new PolyCracker().crack(ciphertext);
+    }
+
     /**
      * Returns the key this cipher uses to encrypt and decrypt.
      * @return The key used to encrypt and decrypt
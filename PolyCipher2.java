@@ -49,6 +49,7 @@ public class PolyCipher2 extends Cipher {
          */
     @Override
     public String encrypt(String plaintext) {
+        CipherMetrics.CipherEvent event = CipherMetrics.begin();
         String output = "";
         int squareCount = 0;
         for(char c : plaintext.toCharArray()) {
@@ -58,6 +59,7 @@ public class PolyCipher2 extends Cipher {
             if(squareCount >= square.length)
                 squareCount = 0;
         }
+        CipherMetrics.end(event, this, true, plaintext.length());
         return output;
     }
 
@@ -79,31 +81,11 @@ public class PolyCipher2 extends Cipher {
     }
 
     public void scrambleSquare() {
-        for(int row = 0; row < square.length * 10; row++) {
-            int a = Rand.randInt(square.length);
-            int b = Rand.randInt(square.length);
-            char[] swap = square[a];
-            square[a] = square[b];
-            square[b] = swap;
-        }
-        for (int col = 0; col < square.length * 10; col++) {
-            int a = Rand.randInt(square.length);
-            int b = Rand.randInt(square.length);
-            for (int row = 0; row < square.length; row++) {
-                char c = square[row][a];
-                square[row][a] = square[row][b];
-                square[row][b] = c;
-            }
-        }
+        KeyFactory.scramble(square, Rand.local());
     }
 
     public static String generateKey(String plaintext, ArrayList<Character> alpha) {
-        StringBuilder k = new StringBuilder();
-        for (int i = 0; i < plaintext.length(); i++) {
-            int idx = Rand.randInt(alpha.size());
-            k.append(alpha.get(idx));
-        }
-        return k.toString();
+        return KeyFactory.runningKey(plaintext.length(), alpha, Rand.local());
     }
 
     public void printSquare() {
@@ -123,8 +105,7 @@ public class PolyCipher2 extends Cipher {
          * @return The number representation of our character
          */
     public int convert(char character) {
-        String defaultAlphabet = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789.,!?'\";:/";
-        return defaultAlphabet.indexOf(character);
+        return PolyCipher.DEFAULT_ALPHABET.indexOf(character);
     }
 
     /**
@@ -0,0 +1,513 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Ciphertext-only attack on PolyCipher with an unknown, scrambled beta square and a repeating key.
+ *
+ * generateSquare() fills row r with the alphabet rotated by r, and scrambleSquare() only permutes whole rows and whole
+ * columns. So every row of the square is one fixed mixed alphabet, the column permutation, rotated by some amount:
+ * cipher = alphabet[(mix(p) + shift(row)) mod N]. The key picks a row per position, so a key of period L makes L
+ * streams that are all the same substitution up to a Caesar shift of the cipher index. That structure is what makes
+ * the attack tractable: one 71-symbol substitution and L - 1 shifts, rather than L unrelated substitutions.
+ *
+ * 1. The period is the shortest one whose streams have an index of coincidence close to the best seen; wrong periods
+ *    mix rows and flatten the histograms.
+ * 2. Each stream's histogram is the first stream's rotated by their shift difference, so the shifts are found by
+ *    rotating histograms against the consensus of the other streams, as CaesarCipher does against English. Streams
+ *    are aligned in parallel.
+ * 3. Shifted back, the whole ciphertext is one substitution, solved with SubstitutionSolver's pair-count matrix climb
+ *    over a symbol bigram model: case-folded English bigrams between letters, capitals mostly after sentence ends,
+ *    and rough prose shares for punctuation and digits. Restarts run in parallel.
+ * 4. The shifts and the substitution are then refined in turn: each stream tries every shift against the current
+ *    substitution, and the substitution is climbed again whenever a shift moves.
+ *
+ * The key itself is not recovered, only the shift each key position applies: which row a key char selects depends on
+ * the unknown row order. The result decrypts the traffic all the same.
+ */
+public final class PolyCracker implements Cracker<PolyCracker.Key> {
+
+    /** Longest key period tried. */
+    public static final int MAX_PERIOD = 100;
+
+    /** Fewest chars a stream needs for its histogram to be worth aligning. */
+    static final int MIN_STREAM = 20;
+
+    /** A period is accepted once its coincidence reaches this fraction of the best period's. */
+    static final double PERIOD_THRESHOLD = 0.9;
+
+    /** Rounds of shift and substitution refinement at most. */
+    static final int ROUNDS = 8;
+
+    // Shape of English prose with the whitespace stripped, for the symbol model: the share of letters, of capitals
+    // among letters, and of capitals straight after a full stop, question or exclamation mark
+    private static final double LETTER_SHARE = 0.965;
+    private static final double UPPER_SHARE = 0.03;
+    private static final double SENTENCE_UPPER = 0.9;
+
+    private final AlphabetCodec alphabet;
+    private final BigramModel model;
+    private final int restarts;
+    private final long seed;
+
+    public PolyCracker() {
+        this(PolyCipher.DEFAULT_ALPHABET, Bigrams.model, 16, System.nanoTime());
+    }
+
+    /**
+     * @param alphabet The square's alphabet, the one PolyCipher indexes rows and columns with.
+     * @param model Letter pair statistics for the plaintext.
+     * @param restarts Substitution climbs per period tried.
+     * @param seed Seed for the shuffled restarts.
+     */
+    public PolyCracker(AlphabetCodec alphabet, BigramModel model, int restarts, long seed) {
+        if (restarts < 1) {
+            throw new IllegalArgumentException("restarts must be positive");
+        }
+        this.alphabet = alphabet;
+        this.model = model;
+        this.restarts = restarts;
+        this.seed = seed;
+    }
+
+    /** What the attack recovers: the shift of each key position and the substitution left once they are undone. */
+    public static final class Key {
+        private final AlphabetCodec alphabet;
+        private final int[] shifts;
+        private final int[] plain;
+
+        Key(AlphabetCodec alphabet, int[] shifts, int[] plain) {
+            this.alphabet = alphabet;
+            this.shifts = shifts;
+            this.plain = plain;
+        }
+
+        public int period() {
+            return shifts.length;
+        }
+
+        /** Cipher index shift of each key position, relative to the first. */
+        public int[] shifts() {
+            return shifts.clone();
+        }
+
+        /** Plaintext alphabet index for each cipher index, once the position's shift is undone. */
+        public int[] substitution() {
+            return plain.clone();
+        }
+
+        public String decrypt(String ciphertext) {
+            int n = alphabet.size();
+            char[] out = ciphertext.toCharArray();
+            for (int i = 0; i < out.length; i++) {
+                int c = alphabet.indexOf(out[i]);
+                if (c >= 0) {
+                    out[i] = alphabet.charAt(plain[Math.floorMod(c - shifts[i % shifts.length], n)]);
+                }
+            }
+            return new String(out);
+        }
+    }
+
+    /**
+     * Crack a PolyCipher ciphertext.
+     * @param ciphertext The ciphertext, every char in the alphabet.
+     * @return The recovered key, the plaintext (whitespace stays stripped, as PolyCipher encrypts it), and the mean
+     *         symbol bigram log probability per pair.
+     */
+    @Override
+    public CrackResult<Key> crack(String ciphertext) {
+        return crack(ciphertext, CrackContext.unbounded());
+    }
+
+    /**
+     * crack() under a deadline. Once the context is stopped no more substitution restarts or refinement rounds are
+     * started, though the first restart always runs. The result after the first solve and after each round is offered.
+     */
+    @Override
+    public CrackResult<Key> crack(String ciphertext, CrackContext<Key> context) {
+        int[] codes = encode(ciphertext);
+        List<Integer> periods = periods(codes);
+        return crack(codes, periods.isEmpty() ? 1 : periods.get(0), context);
+    }
+
+    /** Crack with the period already known. */
+    public CrackResult<Key> crack(String ciphertext, int period) {
+        if (period < 1) {
+            throw new IllegalArgumentException("period must be positive");
+        }
+        return crack(encode(ciphertext), period, CrackContext.unbounded());
+    }
+
+    private int[] encode(String ciphertext) {
+        int[] codes = new int[ciphertext.length()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = alphabet.indexOf(ciphertext.charAt(i));
+            if (codes[i] < 0) {
+                throw new IllegalArgumentException("'" + ciphertext.charAt(i) + "' at " + i + " is not in the alphabet");
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * Candidate periods, most likely first: those whose mean stream coincidence is within PERIOD_THRESHOLD of the
+     * best, shortest first, then the rest by coincidence.
+     */
+    public List<Integer> periods(String ciphertext) {
+        return periods(encode(ciphertext));
+    }
+
+    private List<Integer> periods(int[] codes) {
+        int n = alphabet.size();
+        int max = Math.min(MAX_PERIOD, codes.length / MIN_STREAM);
+        double[] ic = new double[max + 1];
+        IntStream.rangeClosed(1, max).parallel().forEach(period -> ic[period] = coincidence(codes, period, n));
+        double best = 0;
+        for (int period = 1; period <= max; period++) {
+            best = Math.max(best, ic[period]);
+        }
+        double cut = best * PERIOD_THRESHOLD;
+        List<Integer> ranked = new ArrayList<>();
+        for (int period = 1; period <= max; period++) {
+            ranked.add(period);
+        }
+        ranked.sort(Comparator.comparing((Integer period) -> ic[period] < cut)
+                .thenComparing(period -> ic[period] < cut ? -ic[period] : period));
+        return ranked;
+    }
+
+    /** Mean over the streams of the chance that two chars of the stream are the same symbol. */
+    private static double coincidence(int[] codes, int period, int n) {
+        int[] counts = new int[period * n];
+        for (int i = 0; i < codes.length; i++) {
+            counts[(i % period) * n + codes[i]]++;
+        }
+        double total = 0;
+        for (int s = 0; s < period; s++) {
+            long len = 0;
+            long same = 0;
+            for (int c = 0; c < n; c++) {
+                long k = counts[s * n + c];
+                len += k;
+                same += k * (k - 1);
+            }
+            total += len < 2 ? 0 : (double) same / (len * (len - 1));
+        }
+        return total / period;
+    }
+
+    private CrackResult<Key> crack(int[] codes, int period, CrackContext<Key> context) {
+        int n = alphabet.size();
+        float[] lp = symbolModel(alphabet, model);
+        int[] shifts = align(codes, period, n);
+        context.keyLength(period);
+
+        int[] aligned = new int[codes.length];
+        int[] counts = new int[n * n];
+        shiftBack(codes, shifts, n, aligned);
+        countPairs(aligned, n, counts);
+        int[] plain = solve(counts, lp, n, context);
+        CrackResult<Key> result = result(codes, shifts, plain, lp, aligned);
+        context.offer(result);
+
+        int[] free = new int[n];
+        for (int x = 0; x < n; x++) {
+            free[x] = x;
+        }
+        int[] scratch = new int[n * n];
+        for (int round = 0; round < ROUNDS && period > 1 && !context.stopped(); round++) {
+            context.iterations(1);
+            context.candidates((long) (period - 1) * n);
+            if (!refineShifts(codes, shifts, plain, lp, n)) {
+                break;
+            }
+            shiftBack(codes, shifts, n, aligned);
+            countPairs(aligned, n, counts);
+            SubstitutionSolver.climb(counts, lp, n, plain, free, n, scratch, context);
+            result = result(codes, shifts, plain, lp, aligned);
+            context.offer(result);
+        }
+        return context.finish("PolyCracker", result);
+    }
+
+    /** Decrypt under shifts and plain, which are copied into the key. aligned is scratch. */
+    private CrackResult<Key> result(int[] codes, int[] shifts, int[] plain, float[] lp, int[] aligned) {
+        int n = alphabet.size();
+        shiftBack(codes, shifts, n, aligned);
+        char[] out = new char[codes.length];
+        double score = 0;
+        for (int i = 0; i < codes.length; i++) {
+            out[i] = alphabet.charAt(plain[aligned[i]]);
+            if (i > 0) {
+                score += lp[plain[aligned[i - 1]] * n + plain[aligned[i]]];
+            }
+        }
+        Key key = new Key(alphabet, shifts.clone(), plain.clone());
+        return new CrackResult<>(key, new String(out), codes.length < 2 ? 0.0 : score / (codes.length - 1));
+    }
+
+    /**
+     * Shift of each stream relative to the first. Every stream is first rotated against stream 0, then each is
+     * re-aligned against the sum of all the others until nothing moves, which is steadier than any one stream.
+     */
+    private static int[] align(int[] codes, int period, int n) {
+        int[][] hist = new int[period][n];
+        for (int i = 0; i < codes.length; i++) {
+            hist[i % period][codes[i]]++;
+        }
+        int[] shifts = new int[period];
+        IntStream.range(1, period).parallel().forEach(s -> shifts[s] = bestRotation(hist[0], hist[s], n));
+
+        for (int round = 0; round < period; round++) {
+            // Consensus in stream 0's frame
+            int[] sum = new int[n];
+            for (int s = 0; s < period; s++) {
+                for (int c = 0; c < n; c++) {
+                    sum[c] += hist[s][Math.floorMod(c + shifts[s], n)];
+                }
+            }
+            int[] next = new int[period];
+            IntStream.range(0, period).parallel().forEach(s -> {
+                int[] others = new int[n];
+                for (int c = 0; c < n; c++) {
+                    others[c] = sum[c] - hist[s][Math.floorMod(c + shifts[s], n)];
+                }
+                next[s] = bestRotation(others, hist[s], n);
+            });
+            // Keep stream 0 as the reference
+            boolean moved = false;
+            for (int s = 0; s < period; s++) {
+                int shift = Math.floorMod(next[s] - next[0], n);
+                moved |= shift != shifts[s];
+                shifts[s] = shift;
+            }
+            if (!moved) {
+                break;
+            }
+        }
+        return shifts;
+    }
+
+    /** The d for which hist[c + d] lines up best with reference[c], by cross-correlation. */
+    private static int bestRotation(int[] reference, int[] hist, int n) {
+        int best = 0;
+        long bestDot = -1;
+        for (int d = 0; d < n; d++) {
+            long dot = 0;
+            for (int c = 0; c < n; c++) {
+                dot += (long) reference[c] * hist[(c + d) % n];
+            }
+            if (dot > bestDot) {
+                bestDot = dot;
+                best = d;
+            }
+        }
+        return best;
+    }
+
+    private static void shiftBack(int[] codes, int[] shifts, int n, int[] out) {
+        int period = shifts.length;
+        for (int i = 0; i < codes.length; i++) {
+            out[i] = codes[i] - shifts[i % period];
+            if (out[i] < 0) {
+                out[i] += n;
+            }
+        }
+    }
+
+    private static void countPairs(int[] aligned, int n, int[] counts) {
+        Arrays.fill(counts, 0);
+        for (int i = 1; i < aligned.length; i++) {
+            counts[aligned[i - 1] * n + aligned[i]]++;
+        }
+    }
+
+    /**
+     * The substitution for the aligned text, best of the restarts. The first starts from frequency rank, symbols of
+     * the text paired with symbols of the model in order; the rest from shuffles of it.
+     */
+    private int[] solve(int[] counts, float[] lp, int n, CrackContext<Key> context) {
+        int[] seen = new int[n];
+        for (int x = 0; x < n; x++) {
+            for (int y = 0; y < n; y++) {
+                seen[x] += counts[x * n + y] + counts[y * n + x];
+            }
+        }
+        double[] expected = unigrams(alphabet, model);
+        Integer[] bySeen = new Integer[n];
+        Integer[] byExpected = new Integer[n];
+        for (int x = 0; x < n; x++) {
+            bySeen[x] = x;
+            byExpected[x] = x;
+        }
+        Arrays.sort(bySeen, (x, y) -> seen[y] - seen[x]);
+        Arrays.sort(byExpected, (x, y) -> Double.compare(expected[y], expected[x]));
+        int[] start = new int[n];
+        int[] free = new int[n];
+        for (int r = 0; r < n; r++) {
+            start[bySeen[r]] = byExpected[r];
+            free[r] = bySeen[r];
+        }
+
+        double[] scores = new double[restarts];
+        int[][] keys = new int[restarts][];
+        Arrays.fill(scores, Double.NEGATIVE_INFINITY);
+        IntStream.range(0, restarts).parallel().forEach(r -> {
+            if (r > 0 && context.stopped()) {
+                return;
+            }
+            context.iterations(1);
+            int[] key = start.clone();
+            if (r > 0) {
+                SplittableRandom rnd = new SplittableRandom(seed + r);
+                for (int i = n - 1; i > 0; i--) {
+                    SubstitutionSolver.swapKey(key, i, rnd.nextInt(i + 1));
+                }
+            }
+            scores[r] = SubstitutionSolver.climb(counts, lp, n, key, free, n, new int[n * n], context);
+            keys[r] = key;
+        });
+        int best = 0;
+        for (int r = 1; r < restarts; r++) {
+            if (scores[r] > scores[best]) {
+                best = r;
+            }
+        }
+        return keys[best];
+    }
+
+    /**
+     * Try every shift for each stream but the first against the current substitution, keeping the best.
+     * @return Whether any shift changed.
+     */
+    private static boolean refineShifts(int[] codes, int[] shifts, int[] plain, float[] lp, int n) {
+        int period = shifts.length;
+        boolean changed = false;
+        for (int s = 1; s < period; s++) {
+            int best = shifts[s];
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int d = 0; d < n; d++) {
+                double score = 0;
+                for (int i = s; i < codes.length; i += period) {
+                    int p = plain[Math.floorMod(codes[i] - d, n)];
+                    if (i > 0) {
+                        score += lp[plainAt(codes, shifts, plain, i - 1, n) * n + p];
+                    }
+                    if (i + 1 < codes.length) {
+                        score += lp[p * n + plainAt(codes, shifts, plain, i + 1, n)];
+                    }
+                }
+                if (score > bestScore + 1e-9) {
+                    bestScore = score;
+                    best = d;
+                }
+            }
+            changed |= best != shifts[s];
+            shifts[s] = best;
+        }
+        return changed;
+    }
+
+    private static int plainAt(int[] codes, int[] shifts, int[] plain, int i, int n) {
+        return plain[Math.floorMod(codes[i] - shifts[i % shifts.length], n)];
+    }
+
+    /** Share of plaintext each symbol of the alphabet is expected to take. */
+    static double[] unigrams(AlphabetCodec alphabet, BigramModel model) {
+        int n = alphabet.size();
+        double[] letter = letterShares(model);
+        double[] p = otherShares(alphabet);
+        for (int x = 0; x < n; x++) {
+            char ch = alphabet.charAt(x);
+            int a = BigramModel.code(ch);
+            if (a >= 0) {
+                p[x] = LETTER_SHARE * caseShare(ch) * letter[a];
+            }
+        }
+        return p;
+    }
+
+    /** Relative frequency of each letter, case folded, from the bigram model's pair totals. */
+    private static double[] letterShares(BigramModel model) {
+        double[] letter = new double[BigramModel.A];
+        double total = 0;
+        for (int a = 0; a < BigramModel.A; a++) {
+            for (int b = 0; b < BigramModel.A; b++) {
+                letter[a] += model.frequency(a, b);
+            }
+            total += letter[a];
+        }
+        for (int a = 0; a < BigramModel.A; a++) {
+            letter[a] /= total;
+        }
+        return letter;
+    }
+
+    /** Share of the plaintext for each non-letter of the alphabet, adding up to 1 - LETTER_SHARE. Letters get 0. */
+    private static double[] otherShares(AlphabetCodec alphabet) {
+        int n = alphabet.size();
+        double[] p = new double[n];
+        double total = 0;
+        for (int x = 0; x < n; x++) {
+            char ch = alphabet.charAt(x);
+            if (BigramModel.code(ch) < 0) {
+                p[x] = ch == '.' || ch == ',' ? 0.012
+                        : ch == '\'' || ch == '"' ? 0.003
+                        : ch == ';' || ch == ':' || ch == '!' || ch == '?' ? 0.0006
+                        : Character.isDigit(ch) ? 0.0003
+                        : 0.0001;
+                total += p[x];
+            }
+        }
+        for (int x = 0; x < n; x++) {
+            p[x] *= (1 - LETTER_SHARE) / total;
+        }
+        return p;
+    }
+
+    /**
+     * log P(y | x) for each symbol pair, n x n. After a letter, the next letter follows the bigram model (case
+     * folded); after anything else it is drawn by letter frequency alone, and is usually a capital if x ended a
+     * sentence. Non-letters are drawn by their share wherever they fall.
+     */
+    static float[] symbolModel(AlphabetCodec alphabet, BigramModel model) {
+        int n = alphabet.size();
+        double[] letter = letterShares(model);
+        double[] other = otherShares(alphabet);
+        double[] rowTotal = new double[BigramModel.A];
+        for (int a = 0; a < BigramModel.A; a++) {
+            for (int b = 0; b < BigramModel.A; b++) {
+                rowTotal[a] += model.frequency(a, b);
+            }
+        }
+        float[] lp = new float[n * n];
+        for (int x = 0; x < n; x++) {
+            char cx = alphabet.charAt(x);
+            int a = BigramModel.code(cx);
+            boolean sentenceEnd = cx == '.' || cx == '!' || cx == '?';
+            for (int y = 0; y < n; y++) {
+                char cy = alphabet.charAt(y);
+                int b = BigramModel.code(cy);
+                double logP;
+                if (b < 0) {
+                    logP = Math.log(other[y]);
+                } else if (a >= 0) {
+                    logP = model.logProb(a, b) - Math.log(rowTotal[a]) + Math.log(LETTER_SHARE * caseShare(cy));
+                } else {
+                    double upper = sentenceEnd ? SENTENCE_UPPER : UPPER_SHARE;
+                    logP = Math.log(LETTER_SHARE * letter[b] * (Character.isUpperCase(cy) ? upper : 1 - upper));
+                }
+                lp[x * n + y] = (float) logP;
+            }
+        }
+        return lp;
+    }
+
+    private static double caseShare(char c) {
+        return Character.isUpperCase(c) ? UPPER_SHARE : 1 - UPPER_SHARE;
+    }
+}
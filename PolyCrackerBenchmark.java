@@ -0,0 +1,72 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * How much PolyCipher traffic PolyCracker needs: for each message length and key period, encrypt random excerpts of a
+ * text under a fresh scrambled square and a random key, crack them, and report how often the period was found, the
+ * mean share of chars recovered, and the mean time. Chars outside the square's alphabet are dropped from the text.
+ *
+ * Usage: PolyCrackerBenchmark [text file, default README.md] [trials per cell, default 4]
+ */
+public class PolyCrackerBenchmark {
+
+    static final int[] LENGTHS = {500, 1000, 2000, 4000};
+    static final int[] PERIODS = {1, 5, 11, 20, 40};
+
+    public static void main(String[] args) throws IOException {
+        String path = args.length > 0 ? args[0] : "README.md";
+        int trials = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        AlphabetCodec alpha = PolyCipher.DEFAULT_ALPHABET;
+        StringBuilder sb = new StringBuilder();
+        for (char c : new String(Files.readAllBytes(Paths.get(path))).toCharArray()) {
+            if (alpha.contains(c)) {
+                sb.append(c);
+            }
+        }
+        String text = sb.toString();
+        String[] names = {"lower", "upper", "numbers", "punctuation"};
+        Rand r = Rand.seeded(17);
+
+        System.out.printf("%-8s %-7s %8s %10s %10s%n", "length", "period", "found", "recovered", "ms");
+        for (int length : LENGTHS) {
+            if (length > text.length()) {
+                break;
+            }
+            for (int period : PERIODS) {
+                int found = 0;
+                double recovered = 0;
+                long nanos = 0;
+                for (int t = 0; t < trials; t++) {
+                    StringBuilder key = new StringBuilder();
+                    for (int i = 0; i < period; i++) {
+                        key.append(alpha.charAt(r.nextInt(alpha.size())));
+                    }
+                    PolyCipher cipher = new PolyCipher(key.toString(), names);
+                    cipher.generateSquare();
+                    cipher.scrambleSquare(r);
+                    int from = r.nextInt(text.length() - length + 1);
+                    String plain = text.substring(from, from + length);
+                    String encrypted = cipher.encrypt(plain);
+
+                    long start = System.nanoTime();
+                    CrackResult<PolyCracker.Key> result = PolyCipher.crack(encrypted);
+                    nanos += System.nanoTime() - start;
+
+                    if (result.key().period() == period) {
+                        found++;
+                    }
+                    int right = 0;
+                    for (int i = 0; i < length; i++) {
+                        if (result.plaintext().charAt(i) == plain.charAt(i)) {
+                            right++;
+                        }
+                    }
+                    recovered += (double) right / length;
+                }
+                System.out.printf("%-8d %-7d %5d/%-2d %9.1f%% %,10.0f%n", length, period, found, trials,
+                        100 * recovered / trials, nanos / 1e6 / trials);
+            }
+        }
+    }
+}
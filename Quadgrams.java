@@ -0,0 +1,25 @@
+import java.io.IOException;
+
+/**
+ * The shared quadgram model. Unless NgramCompiler was given a corpus, it is trained on dict.txt, a list of word types:
+ * every word counts once, so "the" weighs no more than any rare word and the table carries no word-frequency
+ * information. It still ranks transposition keys well, where every candidate has the same letters, but for
+ * substitution, which has to tell common letters from rare ones, BigramScorer and Bigrams.model need fewer candidates.
+ */
+public class Quadgrams {
+
+    /** Table written by NgramCompiler. Override with -Dquadgrams.path, or set it to "none" to train from dict.txt. */
+    static final String TABLE_PATH = System.getProperty("quadgrams.path", "quadgrams.bin");
+
+    /** Letter quadgram log probabilities, from quadgrams.bin, or trained again when that is missing or stale. */
+    public static final NgramModel model;
+
+    static {
+        try {
+            model = NgramModel.open(4, TABLE_PATH);
+        } catch (IOException ioEx) {
+            ioEx.printStackTrace();
+            throw new RuntimeException(ioEx);
+        }
+    }
+}
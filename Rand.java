@@ -1,54 +1,181 @@
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.SecureRandom;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
+/**
+ * Random numbers for keys, squares and padding.
+ *
+ * Each Rand owns its generator; nothing is shared through statics any more, so two threads never queue on one
+ * SecureRandom. Pick the kind by what the numbers are for:
+ * - new Rand() or local(): SecureRandom, for key material and beta squares. local() is one per thread.
+ * - fast(): ThreadLocalRandom of whichever thread calls it, for things that needn't be secret, like padding. One
+ *   instance can be shared freely.
+ * - seeded(seed): SplittableRandom, the same numbers every run, for benchmarks and tests. split() hands each worker
+ *   thread its own independent stream.
+ *
+ * Instances from seeded() and split() belong to one thread at a time. The static randInt/randGauss helpers use
+ * local().
+ */
 public class Rand {
-    private static SecureRandom rand;
 
-    static {new Rand();}
+    /** Bytes fill() draws from the generator at a time. */
+    static final int BUFFER_BYTES = 1024;
+
+    private static final ThreadLocal<Rand> LOCAL = ThreadLocal.withInitial(Rand::new);
+
+    private static final Rand FAST = new Rand((RandomGenerator) null);
+
+    private final RandomGenerator generator; // null means ThreadLocalRandom.current()
 
     public Rand() {
+        SecureRandom rand;
         try {
             rand = SecureRandom.getInstance("SHA1PRNG", "SUN");
         } catch (NoSuchAlgorithmException nsaEx) {
             nsaEx.printStackTrace();
-            byte[] seed = SecureRandom.getSeed(128);
-            rand = new SecureRandom(seed);
+            rand = new SecureRandom(SecureRandom.getSeed(128));
         } catch (NoSuchProviderException nspEx) {
             nspEx.printStackTrace();
-            byte[] seed = SecureRandom.getSeed(128);
-            rand = new SecureRandom(seed);
+            rand = new SecureRandom(SecureRandom.getSeed(128));
         }
+        this.generator = rand;
     }
 
+    /**
+     * A SHA1PRNG seeded with exactly these bytes and nothing else, so the same seed gives the same sequence.
+     */
     public Rand(byte[] seed) {
-        rand = new SecureRandom(seed);
+        SecureRandom rand;
+        try {
+            rand = SecureRandom.getInstance("SHA1PRNG", "SUN");
+            rand.setSeed(seed);
+        } catch (NoSuchAlgorithmException | NoSuchProviderException ex) {
+            ex.printStackTrace();
+            rand = new SecureRandom(seed);
+        }
+        this.generator = rand;
+    }
+
+    private Rand(RandomGenerator generator) {
+        this.generator = generator;
+    }
+
+    /** This thread's secure generator. */
+    public static Rand local() {
+        return LOCAL.get();
+    }
+
+    /** Not for secrets: fast, uncontended numbers from the calling thread's ThreadLocalRandom. */
+    public static Rand fast() {
+        return FAST;
+    }
+
+    /** A reproducible, non-secure stream. */
+    public static Rand seeded(long seed) {
+        return new Rand(new SplittableRandom(seed));
+    }
+
+    /**
+     * An independent stream for another thread. Seeded streams split deterministically; secure ones start a fresh
+     * SecureRandom; fast() is already per thread and returns itself.
+     */
+    public Rand split() {
+        if (generator == null) {
+            return this;
+        }
+        if (generator instanceof SplittableRandom) {
+            return new Rand(((SplittableRandom) generator).split());
+        }
+        return new Rand();
+    }
+
+    private RandomGenerator generator() {
+        return generator != null ? generator : ThreadLocalRandom.current();
+    }
+
+    /** Uniform in [0, bound). */
+    public int nextInt(int bound) {
+        return generator().nextInt(bound);
+    }
+
+    /** Uniform in [0, 1). */
+    public double nextDouble() {
+        return generator().nextDouble();
+    }
+
+    /** Uniform in [min, max], both ends included. */
+    public int nextInt(int min, int max) {
+        return generator().nextInt(min, max + 1);
+    }
+
+    public double nextGaussian(double mean, double stddev) {
+        return generator().nextGaussian(mean, stddev);
+    }
+
+    /**
+     * Fill out with values uniform in [0, bound). Random bytes are drawn BUFFER_BYTES at a time, which for a
+     * SecureRandom means one locked call per 256 values instead of one per value, and each 32 bits are mapped onto
+     * the range by multiply and shift, rejecting the few that would make low values more likely (Lemire's method).
+     */
+    public void fill(int[] out, int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        RandomGenerator g = generator();
+        byte[] bytes = new byte[Math.min(BUFFER_BYTES, 4 * out.length + 16)];
+        int pos = bytes.length;
+        // 2^32 mod bound: products whose low half falls below this would give the low values one extra chance
+        long threshold = (1L << 32) % bound;
+        for (int i = 0; i < out.length; ) {
+            if (pos + 4 > bytes.length) {
+                g.nextBytes(bytes);
+                pos = 0;
+            }
+            long r = (bytes[pos] & 0xFFL) << 24 | (bytes[pos + 1] & 0xFFL) << 16 | (bytes[pos + 2] & 0xFFL) << 8
+                    | (bytes[pos + 3] & 0xFFL);
+            pos += 4;
+            long m = r * bound;
+            if ((m & 0xFFFFFFFFL) < threshold) {
+                continue;
+            }
+            out[i++] = (int) (m >>> 32);
+        }
     }
 
     public static int randInt(int max) {
-        return rand.nextInt(max);
+        return local().nextInt(max);
     }
 
     public static int randInt(int min, int max) {
-        return rand.nextInt(min, max+1);
+        return local().nextInt(min, max);
     }
 
     public static double randGauss(double mean, double stddev) {
-        return rand.nextGaussian(mean, stddev);
+        return local().nextGaussian(mean, stddev);
     }
 
     public static void main(String[] args) {
         Rand rand = new Rand();
         for (int i = 0; i < 20; i++) {
-            System.out.println(rand.randInt(5));
+            System.out.println(rand.nextInt(5));
         }
         System.out.println();
         for (int i = 0; i < 20; i++) {
-            System.out.println(rand.randInt(1, 6));
+            System.out.println(rand.nextInt(1, 6));
         }
         System.out.println();
         for (int i = 0; i < 20; i++) {
-            System.out.println(rand.randGauss(100, 10));
+            System.out.println(rand.nextGaussian(100, 10));
+        }
+        System.out.println();
+        int[] dice = new int[20];
+        seeded(42).fill(dice, 6);
+        for (int d : dice) {
+            System.out.print(d + 1 + " ");
         }
+        System.out.println();
     }
 }
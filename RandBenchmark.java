@@ -0,0 +1,129 @@
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Random ints per second against thread count. Every thread draws the same number of ints in [0, 71), the size of
+ * PolyCipher's default alphabet, from:
+ * - shared: one SecureRandom for every thread, which is what the static Rand used to be;
+ * - local: Rand.local(), a SecureRandom per thread;
+ * - local fill: Rand.local() in bulk;
+ * - fast: Rand.fast(), for padding;
+ * - seeded split: a split of one Rand.seeded stream per thread;
+ * - seeded fill: the same in bulk.
+ *
+ * The threads are a pool kept for all rounds at a thread count, so the per-thread generators are seeded once, as in
+ * a server's worker pool, and only the drawing is timed. On one core the extra threads only show contention.
+ *
+ * Usage: RandBenchmark [max threads, default 8]
+ */
+public class RandBenchmark {
+
+    static final int PER_THREAD = 200_000;
+    static final int BOUND = 71;
+
+    interface Draw {
+        /** Draw PER_THREAD ints on the calling thread. */
+        long run();
+    }
+
+    interface Source {
+        /** Set up a fresh Draw for one thread; called before the threads start. */
+        Draw forThread();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int max = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        SecureRandom shared = SecureRandom.getInstance("SHA1PRNG", "SUN");
+        Rand seeded = Rand.seeded(1);
+
+        List<String> names = new ArrayList<>();
+        List<Source> sources = new ArrayList<>();
+        names.add("shared SecureRandom");
+        sources.add(() -> () -> {
+            long sum = 0;
+            for (int i = 0; i < PER_THREAD; i++) {
+                sum += shared.nextInt(BOUND);
+            }
+            return sum;
+        });
+        names.add("Rand.local()");
+        sources.add(() -> () -> {
+            Rand rand = Rand.local();
+            long sum = 0;
+            for (int i = 0; i < PER_THREAD; i++) {
+                sum += rand.nextInt(BOUND);
+            }
+            return sum;
+        });
+        names.add("Rand.local() fill");
+        sources.add(() -> () -> fill(Rand.local()));
+        names.add("Rand.fast()");
+        sources.add(() -> () -> {
+            Rand rand = Rand.fast();
+            long sum = 0;
+            for (int i = 0; i < PER_THREAD; i++) {
+                sum += rand.nextInt(BOUND);
+            }
+            return sum;
+        });
+        names.add("Rand.seeded split");
+        sources.add(() -> {
+            Rand rand = seeded.split();
+            return () -> {
+                long sum = 0;
+                for (int i = 0; i < PER_THREAD; i++) {
+                    sum += rand.nextInt(BOUND);
+                }
+                return sum;
+            };
+        });
+        names.add("Rand.seeded split fill");
+        sources.add(() -> {
+            Rand rand = seeded.split();
+            return () -> fill(rand);
+        });
+
+        System.out.println(Runtime.getRuntime().availableProcessors() + " processors");
+        for (int threads = 1; threads <= max; threads *= 2) {
+            System.out.println(threads + " thread" + (threads == 1 ? "" : "s"));
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            for (int s = 0; s < sources.size(); s++) {
+                Source source = sources.get(s);
+                int n = threads;
+                Bench.rate("  " + names.get(s), (long) PER_THREAD * n, 2, 5, () -> runThreads(pool, source, n));
+            }
+            pool.shutdown();
+        }
+    }
+
+    static long fill(Rand rand) {
+        int[] out = new int[PER_THREAD];
+        rand.fill(out, BOUND);
+        long sum = 0;
+        for (int v : out) {
+            sum += v;
+        }
+        return sum;
+    }
+
+    static void runThreads(ExecutorService pool, Source source, int n) {
+        List<Future<Long>> futures = new ArrayList<>(n);
+        for (int t = 0; t < n; t++) {
+            Draw draw = source.forThread();
+            futures.add(pool.submit(draw::run));
+        }
+        long sum = 0;
+        try {
+            for (Future<Long> f : futures) {
+                sum += f.get();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        Bench.consume(sum);
+    }
+}
@@ -0,0 +1,24 @@
+/**
+ * A short English passage the demos and benchmarks encrypt and crack, with its letters-only form.
+ */
+public final class SampleText {
+
+    static final String TEXT = "when in the course of human events it becomes necessary for one people to dissolve the "
+            + "political bands which have connected them with another and to assume among the powers of the earth the "
+            + "separate and equal station to which the laws of nature and of natures god entitle them a decent "
+            + "respect to the opinions of mankind requires that they should declare the causes which impel them to "
+            + "the separation";
+
+    private SampleText() {}
+
+    /** Letters only, so word boundaries have to come from the model rather than the spaces. */
+    static char[] letters(String text) {
+        StringBuilder sb = new StringBuilder();
+        for (char c : text.toCharArray()) {
+            if (BigramModel.code(c) >= 0) {
+                sb.append(c);
+            }
+        }
+        return sb.toString().toCharArray();
+    }
+}
@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -6,47 +7,84 @@ import java.util.Map;
 public class ScrambleCipher extends Cipher {
 
     ArrayList<Character> key = new ArrayList<>();
+    private AlphabetCodec.Mapping forward;
+    private AlphabetCodec.Mapping inverse;
 
     public ScrambleCipher() {
         alphabet = getAlphabet(new String[] {"lower"});
         key = getPermutation();
+        compileKey();
     }
 
     public ScrambleCipher(String[] names) {
         alphabet = getAlphabet(names);
         key = getPermutation();
+        compileKey();
+    }
+
+    /**
+     * Use a given key, e.g. one from KeyFactory.permutation(), instead of drawing one.
+     * @param names The alphabet names.
+     * @param k k[i] is what the i-th alphabet char encrypts to; must be a permutation of the alphabet.
+     */
+    public ScrambleCipher(String[] names, char[] k) {
+        alphabet = getAlphabet(names);
+        char[] sorted = k.clone();
+        char[] alpha = toCharArray(alphabet);
+        Arrays.sort(sorted);
+        Arrays.sort(alpha);
+        if (!Arrays.equals(sorted, alpha)) {
+            throw new IllegalArgumentException("key is not a permutation of the alphabet");
+        }
+        for (char c : k) {
+            key.add(c);
+        }
+        compileKey();
+    }
+
+    /**
+     * Build the forward (alphabet to key) and inverse (key to alphabet) substitution tables.
+     */
+    private void compileKey() {
+        char[] image = toCharArray(key);
+        forward = codec().compile(image);
+        inverse = AlphabetCodec.between(image, codec().toCharArray());
     }
 
     @Override
     public String encrypt(String plaintext) {
-        char[] chars = plaintext.toCharArray();
-        StringBuilder ciphertext = new StringBuilder();
-        for (char c : chars) {
-            int idx = alphabet.indexOf(c);
-            if (idx < 0) {
-                ciphertext.append(c);
-                continue;
-            }
-            char e = key.get(idx);
-            ciphertext.append(e);
-        }
-        return ciphertext.toString();
+        CipherMetrics.CipherEvent event = CipherMetrics.begin();
+        String out = forward.apply(plaintext);
+        CipherMetrics.end(event, this, true, plaintext.length());
+        return out;
     }
 
     @Override
     public String decrypt(String ciphertext) {
-        char[] chars = ciphertext.toCharArray();
-        StringBuilder plaintext = new StringBuilder();
-        for (char c : chars) {
-            int idx = key.indexOf(c);
-            if (idx < 0) {
-                plaintext.append(c);
-                continue;
-            }
-            char e = alphabet.get(idx);
-            plaintext.append(e);
-        }
-        return plaintext.toString();
+        CipherMetrics.CipherEvent event = CipherMetrics.begin();
+        String out = inverse.apply(ciphertext);
+        CipherMetrics.end(event, this, false, ciphertext.length());
+        return out;
+    }
+
+    @Override
+    protected CharTransform encryptor() {
+        return forward;
+    }
+
+    @Override
+    protected CharTransform decryptor() {
+        return inverse;
+    }
+
+    @Override
+    protected ByteTransform byteEncryptor() {
+        return forward.isAscii() ? forward : null;
+    }
+
+    @Override
+    protected ByteTransform byteDecryptor() {
+        return inverse.isAscii() ? inverse : null;
     }
 
     Map<Character, Double> getFrequencies(String ciphertext) {
@@ -67,15 +105,21 @@ public class ScrambleCipher extends Cipher {
         return letterFrequencies;
     }
 
+    /**
+     * Pair ciphertext chars with English chars by frequency rank. Chars in guesses keep their known plaintext and
+     * are left out of the ranking, as are English chars outside this cipher's alphabet.
+     */
     Map<Character, Character> getInitialMapping(Map<Character, Double> freqs, Map<Character, Character> guesses) {
         List<Map.Entry<Character, Double>> cipherList = new ArrayList<>(freqs.entrySet());
         List<Map.Entry<Character, Double>> englishList = new ArrayList<>(LetterFrequency.frequencies.entrySet());
+        cipherList.removeIf(e -> guesses.containsKey(e.getKey()));
+        englishList.removeIf(e -> !alphabet.contains(e.getKey()) || guesses.containsValue(e.getKey()));
 
         // Sort both lists by frequency (descending)
         cipherList.sort((a, b) -> Double.compare(b.getValue(), a.getValue()));
         englishList.sort((a, b) -> Double.compare(b.getValue(), a.getValue()));
 
-        Map<Character, Character> mapping = new HashMap<>();
+        Map<Character, Character> mapping = new HashMap<>(guesses);
         for (int i = 0; i < Math.min(cipherList.size(), englishList.size()); i++) {
             mapping.put(cipherList.get(i).getKey(), englishList.get(i).getKey());
         }
@@ -83,37 +127,95 @@ public class ScrambleCipher extends Cipher {
         return mapping;
     }
 
-    void swap(Map<Character, Character> mapping, char a, char b) {
-        char c = mapping.get(a);
-        mapping.put(a, mapping.get(b));
-        mapping.put(b, c);
-    }
-
-    public void crack(String ciphertext, Map<Character, Character> guesses) {
-        Map<Character, Double> freqs = getFrequencies(ciphertext);
-        Map<Character, Character> mapping = getInitialMapping(freqs, guesses);
-        for(char i : mapping.keySet()) {
-            for (char j : mapping.keySet()) {
-                StringBuilder decrypted = new StringBuilder();
-                for (char c : ciphertext.toCharArray()) {
-                    if (guesses.containsKey(c)) {
-                        decrypted.append(guesses.get(c));
-                        continue;
-                    }
-                    if (!mapping.containsKey(c)) {
-                        decrypted.append(c);
-                        continue;
-                    }
-                    decrypted.append(mapping.get(c));
-                }
-                int wordCount = Dictionary.wordCount(decrypted.toString());
-                System.out.printf("%d %s%n", wordCount, decrypted);
-                if (wordCount > 3) {
-                    break;
-                }
-                swap(mapping, i, j);
+    public CrackResult<Map<Character, Character>> crack(String ciphertext, Map<Character, Character> guesses) {
+        return crack(ciphertext, guesses, new SubstitutionSolver());
+    }
+
+    /**
+     * Recover the substitution with a SubstitutionSolver, starting from the frequency-rank mapping. With the default
+     * lower alphabet only a-z is solved for, case-insensitively. Any other alphabet is solved over all of its symbols,
+     * capitals, digits and punctuation included, with SubstitutionSolver's symbol model; that search is slower and
+     * places rare capitals and punctuation less reliably than letters. Chars outside the alphabet decrypt to
+     * themselves.
+     * @param ciphertext The ciphertext to crack.
+     * @param guesses Ciphertext chars whose plaintext is already known. These are never changed.
+     * @param solver The search to run.
+     * @return The cipher-to-plain mapping, one entry per alphabet char, the plaintext, and the mean bigram (or symbol
+     *         bigram) log probability per pair.
+     * @throws IllegalArgumentException If a guess names a char outside the alphabet.
+     */
+    public CrackResult<Map<Character, Character>> crack(String ciphertext, Map<Character, Character> guesses,
+            SubstitutionSolver solver) {
+        return crack(ciphertext, guesses, solver, CrackContext.unbounded());
+    }
+
+    /** crack() as a Cracker, with no guesses. */
+    public Cracker<Map<Character, Character>> cracker(SubstitutionSolver solver) {
+        return (ciphertext, context) -> crack(ciphertext, new HashMap<>(), solver, context);
+    }
+
+    /** crack() under a deadline; see SubstitutionSolver.solve(). */
+    public CrackResult<Map<Character, Character>> crack(String ciphertext, Map<Character, Character> guesses,
+            SubstitutionSolver solver, CrackContext<Map<Character, Character>> context) {
+        if (!isLowerAlphabet()) {
+            return crackSymbols(ciphertext, guesses, solver, context);
+        }
+        String letters = ciphertext.toLowerCase().replaceAll("[^a-z]", "");
+        Map<Character, Character> mapping = getInitialMapping(getFrequencies(letters), guesses);
+        int[] start = new int[BigramModel.A];
+        boolean[] fixed = new boolean[BigramModel.A];
+        Arrays.fill(start, -1);
+        for (Map.Entry<Character, Character> e : mapping.entrySet()) {
+            int x = BigramModel.code(e.getKey());
+            if (x >= 0) {
+                start[x] = BigramModel.code(e.getValue());
+                fixed[x] = guesses.containsKey(e.getKey()) && start[x] >= 0;
             }
         }
+
+        CrackResult<int[]> found = solver.solve(ciphertext.toCharArray(), start, fixed,
+                context.derive(ScrambleCipher::toMapping));
+        return context.finish("ScrambleCipher", toMapping(found));
+    }
+
+    private boolean isLowerAlphabet() {
+        return new String(codec().toCharArray()).equals("abcdefghijklmnopqrstuvwxyz");
+    }
+
+    /** crack() over an alphabet wider than a-z. */
+    private CrackResult<Map<Character, Character>> crackSymbols(String ciphertext, Map<Character, Character> guesses,
+            SubstitutionSolver solver, CrackContext<Map<Character, Character>> context) {
+        AlphabetCodec codec = codec();
+        int[] known = new int[codec.size()];
+        Arrays.fill(known, -1);
+        for (Map.Entry<Character, Character> e : guesses.entrySet()) {
+            int x = codec.indexOf(e.getKey());
+            int p = codec.indexOf(e.getValue());
+            if (x < 0 || p < 0) {
+                throw new IllegalArgumentException("Guess " + e.getKey() + " -> " + e.getValue()
+                        + " is outside the alphabet");
+            }
+            known[x] = p;
+        }
+        CrackResult<int[]> found = solver.solve(codec, ciphertext.toCharArray(), known,
+                context.derive(r -> toMapping(codec, r)));
+        return context.finish("ScrambleCipher", toMapping(codec, found));
+    }
+
+    private static CrackResult<Map<Character, Character>> toMapping(AlphabetCodec codec, CrackResult<int[]> found) {
+        Map<Character, Character> key = new HashMap<>();
+        for (int x = 0; x < codec.size(); x++) {
+            key.put(codec.charAt(x), codec.charAt(found.key()[x]));
+        }
+        return new CrackResult<>(key, found.plaintext(), found.score());
+    }
+
+    private static CrackResult<Map<Character, Character>> toMapping(CrackResult<int[]> found) {
+        Map<Character, Character> key = new HashMap<>();
+        for (int x = 0; x < BigramModel.A; x++) {
+            key.put((char) ('a' + x), (char) ('a' + found.key()[x]));
+        }
+        return new CrackResult<>(key, found.plaintext(), found.score());
     }
 
     public void printKey() {
@@ -145,5 +247,13 @@ public class ScrambleCipher extends Cipher {
         Map<Character, Character> guesses = new HashMap<>();
         //guesses.put('v', '.');
         //cipher.crack(ciphertext, guesses);
+
+        String message = SampleText.TEXT;
+        String encrypted = cipher.encrypt(message);
+        System.out.println(encrypted);
+        long start = System.nanoTime();
+        CrackResult<Map<Character, Character>> cracked = cipher.crack(encrypted, guesses);
+        System.out.printf("%s%n%.1f ms%n", cracked.plaintext(), (System.nanoTime() - start) / 1e6);
+        System.out.println(cracked.plaintext().equals(message) ? "Cracked" : "Not cracked");
     }
 }
@@ -0,0 +1,434 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Simple substitution key search after Jakobsen, "A fast method for cryptanalysis of substitution ciphers" (1995).
+ *
+ * The ciphertext's letter pairs are counted once into a 26 x 26 matrix. Under a key, the decrypted text's pair counts
+ * are that matrix with its rows and columns relabelled, so no decryption is needed to score a key: fitness is the sum
+ * over the matrix of count times the English log probability of the pair. Swapping the plaintext letters p and q of two
+ * cipher letters only swaps rows p and q and columns p and q, so a swap is scored from those two rows and columns, 4 *
+ * 26 cells, and the matrix is only actually permuted when the swap is kept.
+ *
+ * Swaps are tried in Jakobsen's order: cipher letters sorted by frequency, neighbours in that order first, then letters
+ * two apart, and so on. Jakobsen goes back to neighbours after every improvement; here a kept swap doesn't interrupt
+ * the sweep, and sweeps repeat until one changes nothing, which reaches the same kind of local optimum in about half
+ * the evaluations. The first restart starts from the key it is given; the rest shuffle its free letters. The search
+ * stops once AGREE restarts have reached the best fitness seen.
+ *
+ * Pair statistics alone can rate a slightly wrong key above the right one on a few hundred letters, usually by trading
+ * two rare letters. So the winner is optionally polished with a PlaintextScorer, by default quadgrams plus bigrams:
+ * the same swap order, but each swap is scored on the decrypted text. That costs O(n) per swap, paid for a few climbs
+ * from a key that is already nearly right rather than for the whole search.
+ *
+ * All of that is over a-z. solve(AlphabetCodec, ...) runs the same search over any alphabet, scoring the pair matrix
+ * with PolyCracker's symbol model so that capitals, digits and punctuation are placed too.
+ */
+public final class SubstitutionSolver {
+
+    private static final int A = BigramModel.A;
+
+    /** Restarts that must independently reach the best key before the rest are skipped. */
+    static final int AGREE = 3;
+
+    /** Random restarts of the polish climb, and how many random swaps each starts from. */
+    static final int KICKS = 10;
+    static final int KICK_SWAPS = 3;
+
+    private final BigramModel model;
+    private final PlaintextScorer polish;
+    private final int restarts;
+    private final long seed;
+
+    public SubstitutionSolver() {
+        this(Bigrams.model, WeightedScorer.builder().add(NgramScorer.quadgrams(), 1).add(new BigramScorer(), 1).build(),
+                40, System.nanoTime());
+    }
+
+    /**
+     * @param model Pair statistics for the matrix search.
+     * @param polish Scorer for a final swap pass over the decrypted text, or null to skip it.
+     * @param restarts Most hill climbs to run.
+     * @param seed Seed for the shuffled restarts.
+     */
+    public SubstitutionSolver(BigramModel model, PlaintextScorer polish, int restarts, long seed) {
+        if (restarts < 1) {
+            throw new IllegalArgumentException("restarts must be positive");
+        }
+        this.model = model;
+        this.polish = polish;
+        this.restarts = restarts;
+        this.seed = seed;
+    }
+
+    /**
+     * Find the substitution under which the ciphertext reads most like English. Only a-z and A-Z are substituted;
+     * everything else is passed through.
+     * @param cipher The ciphertext.
+     * @param start start[x] = plaintext code guessed for cipher code x, or -1. Need not be a permutation; repeats and
+     *              gaps are filled with the unused letters.
+     * @param fixed fixed[x] = the plaintext of cipher code x is known and start[x] is never changed. May be null.
+     * @return key[x] = plaintext code of cipher code x. The score is the key's mean bigram log probability per letter
+     *         pair, polished or not.
+     */
+    public CrackResult<int[]> solve(char[] cipher, int[] start, boolean[] fixed) {
+        return solve(cipher, start, fixed, CrackContext.unbounded());
+    }
+
+    /**
+     * solve() under a deadline: once the context is stopped no more restarts or kicks are started, and the best key
+     * so far is polished with what is left. At least one restart always runs. The result is offered to the context
+     * once, at the end; the restarts' fitness isn't comparable with the polished key's.
+     */
+    public CrackResult<int[]> solve(char[] cipher, int[] start, boolean[] fixed, CrackContext<int[]> context) {
+        int[] counts = new int[A * A];
+        int[] singles = new int[A];
+        int pairs = count(null, A, cipher, counts, singles);
+        boolean[] locked = fixed == null ? new boolean[A] : fixed;
+        float[] lp = new float[A * A];
+        for (int p = 0; p < A; p++) {
+            for (int q = 0; q < A; q++) {
+                lp[p * A + q] = model.logProb(p, q);
+            }
+        }
+        return search(null, A, cipher, counts, singles, pairs, lp, seedKey(start, locked, A), locked, context);
+    }
+
+    /**
+     * solve() over any alphabet, such as a ScrambleCipher's, where capitals, digits and punctuation are substituted
+     * along with the letters. The pair matrix is scored with PolyCracker's symbol model, which knows how case and
+     * punctuation fall in English prose, and the search starts from frequency rank against it. The polish only swaps
+     * letters of the same case: its scorer ignores case, and reads any non-letter as a word break.
+     * @param alphabet The cipher's alphabet. Chars outside it pass through and break the pairs.
+     * @param cipher The ciphertext.
+     * @param known known[x] = alphabet index of the plaintext of cipher index x, or -1; those are never changed. May
+     *              be null.
+     * @return key[x] = plaintext index of cipher index x. The score is the key's mean symbol log probability per pair.
+     */
+    public CrackResult<int[]> solve(AlphabetCodec alphabet, char[] cipher, int[] known, CrackContext<int[]> context) {
+        int n = alphabet.size();
+        int[] counts = new int[n * n];
+        int[] singles = new int[n];
+        int pairs = count(alphabet, n, cipher, counts, singles);
+        boolean[] locked = new boolean[n];
+        int[] start = new int[n];
+        boolean[] claimed = new boolean[n];
+        Arrays.fill(start, -1);
+        for (int x = 0; known != null && x < n; x++) {
+            if (known[x] >= 0) {
+                start[x] = known[x];
+                locked[x] = true;
+                claimed[known[x]] = true;
+            }
+        }
+
+        // Pair the free symbols, most frequent first, with the unclaimed plaintext symbols, most expected first
+        double[] expected = PolyCracker.unigrams(alphabet, model);
+        Integer[] bySeen = new Integer[n];
+        Integer[] byExpected = new Integer[n];
+        for (int x = 0; x < n; x++) {
+            bySeen[x] = x;
+            byExpected[x] = x;
+        }
+        Arrays.sort(bySeen, (x, y) -> singles[y] - singles[x]);
+        Arrays.sort(byExpected, (x, y) -> Double.compare(expected[y], expected[x]));
+        int next = 0;
+        for (int x : bySeen) {
+            if (!locked[x]) {
+                while (claimed[byExpected[next]]) {
+                    next++;
+                }
+                start[x] = byExpected[next++];
+            }
+        }
+        return search(alphabet, n, cipher, counts, singles, pairs, PolyCracker.symbolModel(alphabet, model),
+                seedKey(start, locked, n), locked, context);
+    }
+
+    /**
+     * Count the cipher's symbol pairs into counts and its symbols into singles. The alphabet is a-z, either case, when
+     * null; chars outside it break the pairs.
+     * @return The number of pairs.
+     */
+    private static int count(AlphabetCodec alphabet, int n, char[] cipher, int[] counts, int[] singles) {
+        int pairs = 0;
+        int prev = -1;
+        for (char ch : cipher) {
+            int cur = code(alphabet, ch);
+            if (cur >= 0) {
+                singles[cur]++;
+                if (prev >= 0) {
+                    counts[prev * n + cur]++;
+                    pairs++;
+                }
+            }
+            prev = cur;
+        }
+        return pairs;
+    }
+
+    /** The restarts from key, then the polish. alphabet is null for a-z, as in count(). */
+    private CrackResult<int[]> search(AlphabetCodec alphabet, int n, char[] cipher, int[] counts, int[] singles,
+            int pairs, float[] lp, int[] key, boolean[] locked, CrackContext<int[]> context) {
+        // Free cipher symbols, most frequent first
+        Integer[] sorted = new Integer[n];
+        for (int x = 0; x < n; x++) {
+            sorted[x] = x;
+        }
+        Arrays.sort(sorted, (x, y) -> singles[y] - singles[x]);
+        int[] free = new int[n];
+        int m = 0;
+        for (int x : sorted) {
+            if (!locked[x]) {
+                free[m++] = x;
+            }
+        }
+
+        SplittableRandom rnd = new SplittableRandom(seed);
+        int[] best = key.clone();
+        double bestScore = Double.NEGATIVE_INFINITY;
+        int hits = 0;
+        int[] trial = new int[n];
+        int[] plainCounts = new int[n * n];
+        for (int r = 0; r < restarts && hits < AGREE && (r == 0 || !context.stopped()); r++) {
+            context.iterations(1);
+            System.arraycopy(key, 0, trial, 0, n);
+            if (r > 0) {
+                for (int i = m - 1; i > 0; i--) {
+                    int j = rnd.nextInt(i + 1);
+                    int t = trial[free[i]];
+                    trial[free[i]] = trial[free[j]];
+                    trial[free[j]] = t;
+                }
+            }
+            double score = climb(counts, lp, n, trial, free, m, plainCounts, context);
+            if (score > bestScore + 1e-6) {
+                bestScore = score;
+                System.arraycopy(trial, 0, best, 0, n);
+                hits = 1;
+            } else if (score > bestScore - 1e-6) {
+                hits++;
+            }
+        }
+
+        char[] plain = new char[cipher.length];
+        decrypt(alphabet, cipher, best, plain);
+        if (polish != null) {
+            int present = 0;
+            while (present < m && singles[free[present]] > 0) {
+                present++;
+            }
+            // Over a-z only the letters in the text are swapped, as Jakobsen does; over a wider alphabet a letter in
+            // the text may also need the plaintext of one that isn't, e.g. a capital the symbol search misplaced
+            polish(alphabet, cipher, best, free, present, alphabet == null ? present : m, plain, rnd, context);
+            bestScore = 0;
+            for (int x = 0; x < n; x++) {
+                for (int y = 0; y < n; y++) {
+                    bestScore += counts[x * n + y] * lp[best[x] * n + best[y]];
+                }
+            }
+        }
+        CrackResult<int[]> result = new CrackResult<>(best, new String(plain), pairs == 0 ? 0.0 : bestScore / pairs);
+        context.offer(result);
+        return context.finish("SubstitutionSolver", result);
+    }
+
+    private static int code(AlphabetCodec alphabet, char ch) {
+        return alphabet == null ? BigramModel.code(ch) : alphabet.indexOf(ch);
+    }
+
+    private static void decrypt(AlphabetCodec alphabet, char[] cipher, int[] key, char[] plain) {
+        for (int i = 0; i < cipher.length; i++) {
+            char ch = cipher[i];
+            int x = code(alphabet, ch);
+            if (x < 0) {
+                plain[i] = ch;
+            } else {
+                plain[i] = alphabet != null ? alphabet.charAt(key[x]) : (char) ((ch <= 'Z' ? 'A' : 'a') + key[x]);
+            }
+        }
+    }
+
+    /** Whether the polish may swap cipher symbols x and y's plaintexts: always over a-z, else letters of one case. */
+    private static boolean swappable(AlphabetCodec alphabet, int[] key, int x, int y) {
+        if (alphabet == null) {
+            return true;
+        }
+        char p = alphabet.charAt(key[x]);
+        char q = alphabet.charAt(key[y]);
+        return Character.isLetter(p) && Character.isLetter(q) && Character.isUpperCase(p) == Character.isUpperCase(q);
+    }
+
+    /**
+     * Climb with the polish scorer, then kick the result with KICK_SWAPS random swaps and climb again, KICKS times,
+     * keeping the best. A wrong key the bigram search settles on is often a cycle of three or more letters, which no
+     * single swap improves; a kick can break the cycle.
+     * @param present The first present entries of free occur in the text; swaps take one of them and one of the first
+     *                m.
+     */
+    private void polish(AlphabetCodec alphabet, char[] cipher, int[] key, int[] free, int present, int m, char[] plain,
+            SplittableRandom rnd, CrackContext<int[]> context) {
+        double best = polishClimb(alphabet, cipher, key, free, present, m, plain, context);
+        int[] trial = new int[key.length];
+        for (int kick = 0; kick < KICKS && present > 1 && !context.stopped(); kick++) {
+            context.iterations(1);
+            System.arraycopy(key, 0, trial, 0, key.length);
+            for (int s = 0; s < KICK_SWAPS; s++) {
+                int i = rnd.nextInt(present);
+                int j = rnd.nextInt(present - 1);
+                int x = free[i];
+                int y = free[j >= i ? j + 1 : j];
+                if (swappable(alphabet, trial, x, y)) {
+                    swapKey(trial, x, y);
+                }
+            }
+            double score = polishClimb(alphabet, cipher, trial, free, present, m, plain, context);
+            if (score > best + 1e-9) {
+                best = score;
+                System.arraycopy(trial, 0, key, 0, key.length);
+            }
+        }
+        decrypt(alphabet, cipher, key, plain);
+    }
+
+    /** Hill climb key in place with the polish scorer, in the same swap order as climb(). */
+    private double polishClimb(AlphabetCodec alphabet, char[] cipher, int[] key, int[] free, int present, int m,
+            char[] plain, CrackContext<?> context) {
+        decrypt(alphabet, cipher, key, plain);
+        double score = polish.score(plain, 0, plain.length);
+        long tried = 0;
+        int step = 1;
+        while (step < m) {
+            boolean improved = false;
+            for (int i = 0; i < present && i + step < m && !improved; i++) {
+                int x = free[i];
+                int y = free[i + step];
+                if (!swappable(alphabet, key, x, y)) {
+                    continue;
+                }
+                swapKey(key, x, y);
+                decrypt(alphabet, cipher, key, plain);
+                double s = polish.score(plain, 0, plain.length);
+                tried++;
+                if (s > score + 1e-9) {
+                    score = s;
+                    improved = true;
+                } else {
+                    swapKey(key, x, y);
+                }
+            }
+            step = improved ? 1 : step + 1;
+        }
+        context.candidates(tried);
+        return score;
+    }
+
+    static void swapKey(int[] key, int x, int y) {
+        int t = key[x];
+        key[x] = key[y];
+        key[y] = t;
+    }
+
+    /** Complete the starting guess to a permutation, filling gaps with the unused symbols in order. */
+    private static int[] seedKey(int[] start, boolean[] locked, int n) {
+        int[] key = new int[n];
+        boolean[] used = new boolean[n];
+        Arrays.fill(key, -1);
+        // Known symbols claim their plaintext first, then guesses in cipher order
+        for (int pass = 0; pass < 2; pass++) {
+            for (int x = 0; x < n; x++) {
+                int p = start == null ? -1 : start[x];
+                if (locked[x] == (pass == 0) && key[x] < 0 && p >= 0 && p < n && !used[p]) {
+                    key[x] = p;
+                    used[p] = true;
+                }
+            }
+        }
+        int next = 0;
+        for (int x = 0; x < n; x++) {
+            if (key[x] < 0) {
+                while (used[next]) {
+                    next++;
+                }
+                key[x] = next;
+                used[next] = true;
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Hill climb from key in place over the free cipher symbols, in Jakobsen's swap order. Works for any alphabet:
+     * counts, lp and d are size x size, key and free have size entries. The swaps it tries are counted as candidates
+     * in the context.
+     * @return The fitness of the key it stops at.
+     */
+    static double climb(int[] counts, float[] lp, int size, int[] key, int[] free, int m, int[] d,
+            CrackContext<?> context) {
+        // d[p * size + q] = count of plaintext pair pq under key
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                d[key[x] * size + key[y]] = counts[x * size + y];
+            }
+        }
+        double score = 0;
+        for (int i = 0; i < d.length; i++) {
+            score += d[i] * lp[i];
+        }
+
+        long tried = 0;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int step = 1; step < m; step++) {
+                tried += m - step;
+                for (int i = 0; i + step < m; i++) {
+                    int x = free[i];
+                    int y = free[i + step];
+                    double delta = swapDelta(d, lp, size, key[x], key[y]);
+                    if (delta > 1e-9) {
+                        swapLabels(d, size, key[x], key[y]);
+                        swapKey(key, x, y);
+                        score += delta;
+                        improved = true;
+                    }
+                }
+            }
+        }
+        context.candidates(tried);
+        return score;
+    }
+
+    /** Change in fitness from swapping plaintext symbols p and q, read off rows and columns p and q. */
+    private static double swapDelta(int[] d, float[] lp, int size, int p, int q) {
+        int rp = p * size;
+        int rq = q * size;
+        double before = 0;
+        double after = 0;
+        for (int j = 0; j < size; j++) {
+            int sj = j == p ? q : j == q ? p : j;
+            before += d[rp + j] * lp[rp + j] + d[rq + j] * lp[rq + j];
+            after += d[rq + sj] * lp[rp + j] + d[rp + sj] * lp[rq + j];
+            if (j != p && j != q) {
+                int rj = j * size;
+                before += d[rj + p] * lp[rj + p] + d[rj + q] * lp[rj + q];
+                after += d[rj + q] * lp[rj + p] + d[rj + p] * lp[rj + q];
+            }
+        }
+        return after - before;
+    }
+
+    /** Swap rows p and q and columns p and q of d. */
+    private static void swapLabels(int[] d, int size, int p, int q) {
+        for (int j = 0; j < size; j++) {
+            int t = d[p * size + j];
+            d[p * size + j] = d[q * size + j];
+            d[q * size + j] = t;
+        }
+        for (int i = 0; i < size; i++) {
+            int t = d[i * size + p];
+            d[i * size + p] = d[i * size + q];
+            d[i * size + q] = t;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Weighted sum of other scorers, e.g. a bigram score for search with a dictionary term to settle close calls.
+ */
+public class WeightedScorer implements PlaintextScorer {
+
+    private final PlaintextScorer[] scorers;
+    private final double[] weights;
+
+    private WeightedScorer(List<PlaintextScorer> scorers, List<Double> weights) {
+        this.scorers = scorers.toArray(new PlaintextScorer[0]);
+        this.weights = new double[weights.size()];
+        for (int i = 0; i < this.weights.length; i++) {
+            this.weights[i] = weights.get(i);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public double score(char[] text, int from, int to) {
+        double total = 0.0;
+        for (int i = 0; i < scorers.length; i++) {
+            total += weights[i] * scorers[i].score(text, from, to);
+        }
+        return total;
+    }
+
+    @Override
+    public double score(CharSequence text, int from, int to) {
+        double total = 0.0;
+        for (int i = 0; i < scorers.length; i++) {
+            total += weights[i] * scorers[i].score(text, from, to);
+        }
+        return total;
+    }
+
+    public static final class Builder {
+        private final List<PlaintextScorer> scorers = new ArrayList<>();
+        private final List<Double> weights = new ArrayList<>();
+
+        public Builder add(PlaintextScorer scorer, double weight) {
+            scorers.add(scorer);
+            weights.add(weight);
+            return this;
+        }
+
+        public WeightedScorer build() {
+            return new WeightedScorer(scorers, weights);
+        }
+    }
+}